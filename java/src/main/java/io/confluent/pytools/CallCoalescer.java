@@ -0,0 +1,152 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Merges the single-record calls of concurrent threads into calls of a batch function (like DataLoader),
+ * so that the threads sharing an interpreter don't wait for it one record at a time.
+ *
+ * A call made while the interpreter is idle runs right away (after lingerMs, if set) with the records queued so far,
+ * the records arriving while it runs go in the next batch (at most maxBatchSize records per batch). One of the callers
+ * runs the batch, each caller gets the result of its own record, or the error of its batch. The batch function gets
+ * the list of records and must return the list of their results, in the same order.
+ */
+public class CallCoalescer {
+
+    private static class PendingCall {
+        private final Object record;
+        private Object result;
+        private Throwable error;
+        private boolean done = false;
+
+        private PendingCall(Object record) {
+            this.record = record;
+        }
+    }
+
+    private final Function<List<Object>, Object> batchFunction;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<PendingCall> queue = new ArrayDeque<>();
+    private boolean running = false;
+
+    /**
+     * @param batchFunction: called with a list of records, returns the list (or an iterator) of their results
+     * @param maxBatchSize: maximum number of records per batch
+     * @param lingerMs: how long an idle coalescer waits for more records before running a batch (0: no wait)
+     */
+    public CallCoalescer(Function<List<Object>, Object> batchFunction, int maxBatchSize, long lingerMs) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("The maximum batch size must be at least 1, not " + maxBatchSize);
+        }
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+    }
+
+    /**
+     * @return the result of the record, computed in a batch with the records of the concurrent calls
+     */
+    @SneakyThrows
+    public Object call(Object record) {
+        PendingCall call = new PendingCall(record);
+        synchronized (lock) {
+            queue.add(call);
+            lock.notifyAll();
+        }
+
+        while (true) {
+            List<PendingCall> batch;
+            synchronized (lock) {
+                while (!call.done && running) {
+                    lock.wait();
+                }
+                if (call.done) {
+                    break;
+                }
+                // the interpreter is idle: this caller runs the next batch
+                running = true;
+                linger();
+                batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+                while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+                    batch.add(queue.poll());
+                }
+            }
+            run(batch);
+        }
+
+        if (call.error != null) {
+            throw call.error;
+        }
+        return call.result;
+    }
+
+    // called with the lock, waits for a full batch until the linger time is over
+    private void linger() {
+        long deadline = System.nanoTime() + lingerNanos;
+        long remaining = lingerNanos;
+        try {
+            while (queue.size() < maxBatchSize && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        } catch (InterruptedException e) {
+            // the batch runs now
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(List<PendingCall> batch) {
+        List<Object> records = new ArrayList<>(batch.size());
+        for (PendingCall call: batch) {
+            records.add(call.record);
+        }
+
+        List<Object> results = null;
+        Throwable error = null;
+        try {
+            results = toList(batchFunction.apply(records));
+            if (results.size() != batch.size()) {
+                throw new IllegalStateException("The batch function returned " + results.size() + " results for " +
+                        batch.size() + " records.");
+            }
+        } catch (Throwable e) {
+            error = e;
+        }
+
+        synchronized (lock) {
+            for (int i = 0; i < batch.size(); i++) {
+                PendingCall call = batch.get(i);
+                if (error != null) {
+                    call.error = error;
+                } else {
+                    call.result = results.get(i);
+                }
+                call.done = true;
+            }
+            running = false;
+            lock.notifyAll();
+        }
+    }
+
+    private static List<Object> toList(Object results) {
+        if (results instanceof List) {
+            return (List<Object>) results;
+        }
+        if (results instanceof Iterator) {
+            List<Object> items = new ArrayList<>();
+            ((Iterator<?>) results).forEachRemaining(items::add);
+            return items;
+        }
+        throw new IllegalStateException("The batch function must return a list of results, not " + results);
+    }
+}
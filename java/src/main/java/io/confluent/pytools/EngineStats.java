@@ -0,0 +1,47 @@
+package io.confluent.pytools;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counters of the function calls made through a PythonEngine: number of calls, failures and time spent
+ * (including the conversions between java and python, not the iteration on a returned generator).
+ */
+public class EngineStats {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    Object record(Supplier<Object> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch (Throwable e) {
+            errors.increment();
+            throw e;
+        } finally {
+            totalNanos.add(System.nanoTime() - start);
+            calls.increment();
+        }
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getTotalTimeNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        long count = getCalls();
+        return "calls=" + count + ", errors=" + getErrors() +
+                ", avg=" + (count == 0 ? 0 : getTotalTimeNanos() / count / 1000) + " us";
+    }
+}
@@ -0,0 +1,139 @@
+package io.confluent.pytools;
+
+/**
+ * Optional settings of the python environment built by a PythonHost (see PythonEnvironment.build).
+ */
+public class EnvironmentOptions {
+
+    private long venvCacheMaxBytes = 0;
+    private boolean sharedEnvironment = false;
+    private boolean precompileBytecode = true;
+    private String pycacheDirectory = null;
+    private String venvSnapshot = null;
+    private String engine = PythonHost.ENGINE_PEMJA;
+    private int workerProcesses = 1;
+    private int asyncQueueCapacity = 1000;
+    private String initMethod = null;
+    private String initSettings = null;
+
+    /**
+     * @param venvCacheMaxBytes: size budget of the virtual environments kept in the working directory (0 = no limit)
+     */
+    public EnvironmentOptions venvCacheMaxBytes(long venvCacheMaxBytes) {
+        this.venvCacheMaxBytes = venvCacheMaxBytes;
+        return this;
+    }
+
+    /**
+     * @param sharedEnvironment: share the python environment (interpreter, imported modules) with the other hosts
+     *                         of the JVM having the same python executable, scripts and requirements.
+     *                         The environment is closed when the last host using it is closed.
+     */
+    public EnvironmentOptions sharedEnvironment(boolean sharedEnvironment) {
+        this.sharedEnvironment = sharedEnvironment;
+        return this;
+    }
+
+    /**
+     * @param initMethod: the init method called on the environment, part of the identity of a shared environment:
+     *                  the hosts with a different init method or settings don't share their module globals
+     * @param initSettings: the settings passed to the init method
+     */
+    public EnvironmentOptions init(String initMethod, String initSettings) {
+        this.initMethod = initMethod;
+        this.initSettings = initSettings;
+        return this;
+    }
+
+    /**
+     * @param precompileBytecode: compile the site-packages of a new venv to bytecode (checked-hash pycs), and the scripts
+     *                          if there's a pycacheDirectory
+     */
+    public EnvironmentOptions precompileBytecode(boolean precompileBytecode) {
+        this.precompileBytecode = precompileBytecode;
+        return this;
+    }
+
+    /**
+     * @param pycacheDirectory: writable directory for the bytecode caches (sys.pycache_prefix), null or empty to
+     *                        keep them in __pycache__ next to the sources
+     */
+    public EnvironmentOptions pycacheDirectory(String pycacheDirectory) {
+        this.pycacheDirectory = pycacheDirectory == null || pycacheDirectory.isEmpty() ? null : pycacheDirectory;
+        return this;
+    }
+
+    /**
+     * @param venvSnapshot: snapshot of the packages (see VenvSnapshot) unpacked in a new venv instead of running
+     *                    pip install, when it matches the requirements and the python executable. Null or empty for none.
+     */
+    public EnvironmentOptions venvSnapshot(String venvSnapshot) {
+        this.venvSnapshot = venvSnapshot == null || venvSnapshot.isEmpty() ? null : venvSnapshot;
+        return this;
+    }
+
+    /**
+     * @param engine: what runs the python code, see PythonHost.ENGINE_*
+     */
+    public EnvironmentOptions engine(String engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * @param workerProcesses: number of python processes of the process engine (see ProcessWorkerPool)
+     */
+    public EnvironmentOptions workerProcesses(int workerProcesses) {
+        this.workerProcesses = workerProcesses;
+        return this;
+    }
+
+    /**
+     * @param asyncQueueCapacity: maximum number of calls waiting for the python thread of the async API
+     *                          (see PythonHost.callEntryPointAsync), the next ones are rejected
+     */
+    public EnvironmentOptions asyncQueueCapacity(int asyncQueueCapacity) {
+        this.asyncQueueCapacity = asyncQueueCapacity;
+        return this;
+    }
+
+    public long getVenvCacheMaxBytes() {
+        return venvCacheMaxBytes;
+    }
+
+    public boolean isSharedEnvironment() {
+        return sharedEnvironment;
+    }
+
+    public boolean isPrecompileBytecode() {
+        return precompileBytecode;
+    }
+
+    public String getPycacheDirectory() {
+        return pycacheDirectory;
+    }
+
+    public String getVenvSnapshot() {
+        return venvSnapshot;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public int getWorkerProcesses() {
+        return workerProcesses;
+    }
+
+    public int getAsyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    public String getInitMethod() {
+        return initMethod;
+    }
+
+    public String getInitSettings() {
+        return initSettings;
+    }
+}
@@ -0,0 +1,351 @@
+package io.confluent.pytools;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Value;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Runs the python code with GraalPy (python.engine=graalpy): the scripts are JIT-compiled by the JVM, without the JNI
+ * calls and CPython objects of pemja, which pays off for the small pure python transforms.
+ *
+ * GraalPy only runs pure python code: the packages of the venv are installed by CPython's pip and imported by GraalPy
+ * (they must support its python version), and a venv with native extensions is run by pemja instead (see
+ * nativeExtension). The GraalPy jars (org.graalvm.polyglot:polyglot and python-community) aren't packaged with the
+ * connector: they must be added to the plugin directory, and need java 17+. The scripts are only JIT-compiled on
+ * GraalVM (or a JDK with the Graal compiler enabled through JVMCI), they're interpreted otherwise.
+ *
+ * The arguments are converted to python objects (dicts, lists, bytes) and the results to the java types returned by
+ * pemja (Long, Double, String, byte[], ArrayList, HashMap). The calls are serialized.
+ */
+public class GraalPyEngine implements PythonEngine {
+
+    private static final String LANGUAGE = "python";
+
+    private final SharedEngine engine;
+    private final Context context;
+    private final VirtualEnvironment venv;
+    private final Value globals;
+    private final Value newDict;
+    private final Value newList;
+    private final Value newBytes;
+    private final EngineStats stats = new EngineStats();
+    private boolean closed = false;
+
+    // the contexts of the same venv share the engine (and the compiled code), closed with the last of them
+    private static class SharedEngine {
+        private final Engine engine = Engine.newBuilder(LANGUAGE).build();
+        private int users = 0;
+
+        private synchronized Engine acquire() {
+            users++;
+            return engine;
+        }
+
+        private synchronized void release() {
+            if (--users == 0) {
+                engine.close();
+            }
+        }
+    }
+
+    public GraalPyEngine(VirtualEnvironment venv) {
+        this(new SharedEngine(), venv);
+        // "Interpreted" without a JIT compiler (eg. on OpenJDK 17): much slower than pemja
+        System.out.println("GraalPy runtime: " + engine.engine.getImplementationName());
+    }
+
+    private GraalPyEngine(SharedEngine engine, VirtualEnvironment venv) {
+        this.engine = engine;
+        this.venv = venv;
+        Engine sharedEngine = engine.acquire();
+        try {
+            context = Context.newBuilder(LANGUAGE)
+                    .engine(sharedEngine)
+                    .allowAllAccess(true)
+                    .option("python.PythonPath", String.join(File.pathSeparator, venv.getPaths()))
+                    .build();
+        } catch (RuntimeException e) {
+            engine.release();
+            throw e;
+        }
+        globals = context.getBindings(LANGUAGE);
+        newDict = context.eval(LANGUAGE, "dict");
+        newList = context.eval(LANGUAGE, "list");
+        newBytes = context.eval(LANGUAGE, "bytes");
+    }
+
+    /**
+     * @return true if the GraalPy jars are in the classpath
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName("org.graalvm.polyglot.Context");
+            Class.forName("com.oracle.graal.python.PythonLanguage");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return a native extension module installed in the venv (which GraalPy can't load), null if there's none.
+     * pemja, installed in every venv, isn't imported by the scripts and is ignored.
+     */
+    public static String nativeExtension(VirtualEnvironment venv) throws IOException {
+        Path venvPath = Paths.get(venv.getPath());
+        for (String path: venv.getPaths()) {
+            Path sitePackages = Paths.get(path);
+            if (!sitePackages.startsWith(venvPath) || !Files.isDirectory(sitePackages)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(sitePackages)) {
+                Optional<Path> extension = files
+                        .filter(file -> {
+                            String name = file.getFileName().toString();
+                            return name.endsWith(".so") || name.endsWith(".pyd");
+                        })
+                        .filter(file -> !sitePackages.relativize(file).getName(0).toString().toLowerCase().startsWith("pemja"))
+                        .findFirst();
+                if (extension.isPresent()) {
+                    return extension.get().toString();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void executePythonStatement(String pythonStatement) {
+        checkNotClosed();
+        python(() -> context.eval(LANGUAGE, pythonStatement));
+    }
+
+    @Override
+    public synchronized Object callPythonMethod(String methodName, Object... args) {
+        checkNotClosed();
+        return invoke(resolve(methodName), args);
+    }
+
+    @Override
+    public synchronized PythonCallable bind(String moduleAlias, String functionName) {
+        checkNotClosed();
+        Value function = resolve(moduleAlias + "." + functionName);
+        return new PythonCallable() {
+            @Override
+            public Object call(Object... args) {
+                synchronized (GraalPyEngine.this) {
+                    checkNotClosed();
+                    return invoke(function, args);
+                }
+            }
+
+            @Override
+            public String getFunctionName() {
+                return functionName;
+            }
+        };
+    }
+
+    private Value resolve(String methodName) {
+        String[] names = methodName.split("\\.");
+        Value function = globals.getMember(names[0]);
+        for (int i = 1; i < names.length && function != null; i++) {
+            function = function.getMember(names[i]);
+        }
+        if (function == null || !function.canExecute()) {
+            throw new IllegalArgumentException(methodName + " is not a function of the python environment.");
+        }
+        return function;
+    }
+
+    private Object invoke(Value function, Object... args) {
+        return stats.record(() -> {
+            Object[] pythonArgs = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                pythonArgs[i] = toPython(args[i]);
+            }
+            return fromPython(python(() -> function.execute(pythonArgs)));
+        });
+    }
+
+    // the errors raised by the python code are reported with the engine-neutral exception
+    private static <T> T python(Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (PolyglotException e) {
+            if (e.isGuestException()) {
+                throw new PythonExecutionException(e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    private Object toPython(Object value) {
+        if (value instanceof Map) {
+            Value dict = newDict.execute();
+            for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet()) {
+                dict.putHashEntry(toPython(entry.getKey()), toPython(entry.getValue()));
+            }
+            return dict;
+        }
+        if (value instanceof Collection || value instanceof Object[]) {
+            Value list = newList.execute();
+            Iterable<?> items = value instanceof Collection ? (Collection<?>) value : List.of((Object[]) value);
+            for (Object item: items) {
+                list.invokeMember("append", toPython(item));
+            }
+            return list;
+        }
+        if (value instanceof byte[] || value instanceof ByteBuffer) {
+            byte[] bytes = value instanceof byte[] ? (byte[]) value : toArray((ByteBuffer) value);
+            return newBytes.execute(Value.asValue(bytes));
+        }
+        if (value instanceof Character) {
+            return value.toString();
+        }
+        // None, bool, int, float, str (and the other java objects, as host objects)
+        return value;
+    }
+
+    private static byte[] toArray(ByteBuffer value) {
+        ByteBuffer buffer = value.duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private Object fromPython(Value value) {
+        if (value.isNull()) {
+            return null;
+        }
+        if (value.isBoolean()) {
+            return value.asBoolean();
+        }
+        if (value.isNumber()) {
+            if (value.fitsInLong()) {
+                return value.asLong();
+            }
+            if (value.fitsInBigInteger()) {
+                return value.asBigInteger();
+            }
+            return value.asDouble();
+        }
+        if (value.isString()) {
+            return value.asString();
+        }
+        if (value.isHostObject()) {
+            return value.asHostObject();
+        }
+        if (value.hasBufferElements()) {
+            byte[] bytes = new byte[(int) value.getBufferSize()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = value.readBufferByte(i);
+            }
+            return bytes;
+        }
+        if (value.hasHashEntries()) {
+            HashMap<Object, Object> map = new HashMap<>();
+            Value entries = value.getHashEntriesIterator();
+            while (entries.hasIteratorNextElement()) {
+                Value entry = entries.getIteratorNextElement();
+                map.put(fromPython(entry.getArrayElement(0)), fromPython(entry.getArrayElement(1)));
+            }
+            return map;
+        }
+        if (value.hasArrayElements()) {
+            List<Object> items = new ArrayList<>((int) value.getArraySize());
+            for (long i = 0; i < value.getArraySize(); i++) {
+                items.add(fromPython(value.getArrayElement(i)));
+            }
+            return items;
+        }
+        if (value.isIterator()) {
+            return new SynchronizedIterator(value);
+        }
+        throw new IllegalArgumentException("The python value " + value + " can't be returned to java.");
+    }
+
+    @Override
+    public synchronized PythonEngine newInterpreter(boolean subInterpreter) {
+        checkNotClosed();
+        return new GraalPyEngine(engine, venv);
+    }
+
+    @Override
+    public EngineStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public String getPythonExePath() {
+        return venv.getPythonExecutable();
+    }
+
+    @Override
+    public String getVirtualEnvironmentPath() {
+        return venv.getPath();
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("The GraalPy context is closed.");
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            context.close();
+            engine.release();
+        }
+    }
+
+    /**
+     * A generator returned by a function, consumed under the lock of the engine.
+     */
+    private class SynchronizedIterator implements Iterator<Object> {
+        private final Value iterator;
+
+        private SynchronizedIterator(Value iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (GraalPyEngine.this) {
+                checkNotClosed();
+                return python(iterator::hasIteratorNextElement);
+            }
+        }
+
+        @Override
+        public Object next() {
+            synchronized (GraalPyEngine.this) {
+                checkNotClosed();
+                if (!python(iterator::hasIteratorNextElement)) {
+                    throw new NoSuchElementException();
+                }
+                return fromPython(python(iterator::getIteratorNextElement));
+            }
+        }
+    }
+}
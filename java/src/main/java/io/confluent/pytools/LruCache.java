@@ -0,0 +1,23 @@
+package io.confluent.pytools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map keeping its most recently used entries: once full, adding an entry evicts the least recently used one.
+ * Not thread-safe, the users synchronize the accesses.
+ */
+class LruCache<K, V> extends LinkedHashMap<K, V> {
+
+    private final int maxEntries;
+
+    LruCache(int maxEntries) {
+        super(16, 0.75f, true);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxEntries;
+    }
+}
@@ -0,0 +1,177 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A python worker process (pytools_worker.py) of a ProcessWorkerPool.
+ *
+ * The requests are written to the standard input of the process and answered in order on its standard output.
+ * They're pipelined: any thread can send a request while others wait for theirs, a reader thread completes them.
+ * When the process dies, the pending and next requests fail (the worker isn't restarted).
+ */
+class ProcessWorker implements AutoCloseable {
+
+    static final byte EXEC = 1;
+    static final byte CALL = 2;
+    static final byte NEXT = 3;
+    static final byte CLOSE_ITER = 4;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+    static final byte ITERATOR = 2;
+
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+
+    private final Process process;
+    private final DataOutputStream requests;
+    private final DataInputStream responses;
+    private final Thread reader;
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final ConcurrentHashMap<Long, CompletableFuture<Object[]>> pending = new ConcurrentHashMap<>();
+    private volatile IOException failure;
+
+    ProcessWorker(String name, List<String> command, Map<String, String> environment) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT);
+        builder.environment().putAll(environment);
+        process = builder.start();
+        requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        reader = new Thread(this::readResponses, name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * @return the number of requests sent and not answered yet
+     */
+    int inFlight() {
+        return pending.size();
+    }
+
+    boolean isAlive() {
+        return failure == null;
+    }
+
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @return the value returned by the worker, or the id of a python iterator (see isIterator)
+     */
+    @SneakyThrows
+    Object[] request(byte operation, Object... values) {
+        try {
+            return send(operation, values).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    CompletableFuture<Object[]> send(byte operation, Object... values) {
+        CompletableFuture<Object[]> response = new CompletableFuture<>();
+        long requestId = nextRequestId.incrementAndGet();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeLong(requestId);
+            out.writeByte(operation);
+            for (Object value: values) {
+                PythonWireFormat.write(out, value);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            response.completeExceptionally(e);
+            return response;
+        }
+
+        pending.put(requestId, response);
+        synchronized (requests) {
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                requests.writeInt(payload.size());
+                payload.writeTo(requests);
+                requests.flush();
+            } catch (IOException e) {
+                pending.remove(requestId);
+                response.completeExceptionally(failure != null ? failure : e);
+            }
+        }
+        return response;
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                int length = responses.readInt();
+                long requestId = responses.readLong();
+                byte status = responses.readByte();
+                Object value = length > 9 ? PythonWireFormat.read(responses) : null;
+                CompletableFuture<Object[]> response = pending.remove(requestId);
+                if (response == null) {
+                    continue;
+                }
+                if (status == ERROR) {
+                    response.completeExceptionally(new PythonExecutionException(String.valueOf(value)));
+                } else {
+                    response.complete(new Object[]{status, value});
+                }
+            }
+        } catch (IOException e) {
+            fail(e instanceof EOFException ? new IOException("The python worker process " + reader.getName() + " has exited.") : e);
+        }
+    }
+
+    private void fail(IOException e) {
+        synchronized (requests) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        for (Long requestId: new ArrayList<>(pending.keySet())) {
+            CompletableFuture<Object[]> response = pending.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Closes the standard input of the process (the worker exits at the end of its requests),
+     * and kills it if it doesn't exit in time.
+     */
+    @Override
+    public void close() {
+        synchronized (requests) {
+            try {
+                requests.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+        try {
+            if (!process.waitFor(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly().waitFor(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        fail(new IOException("The python worker process " + reader.getName() + " is closed."));
+    }
+}
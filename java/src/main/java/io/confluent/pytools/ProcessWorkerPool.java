@@ -0,0 +1,240 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs the python code in worker processes started from the virtual environment, instead of an interpreter
+ * embedded in the JVM: the workers don't share a GIL (the throughput grows with the cores), and a crash or a leak
+ * of a native extension is confined to a worker process.
+ *
+ * The statements (imports) run in every worker, each call goes to the worker with the fewest pending requests.
+ * The module state (globals, caches) is per worker, an init method has to be broadcast (see PythonCallable.broadcast).
+ * The arguments and results are the types supported by PythonWireFormat, a generator stays in its worker and is
+ * consumed in chunks. A worker that dies isn't restarted: its calls fail (and the task is restarted by Connect).
+ */
+public class ProcessWorkerPool implements PythonEngine {
+
+    static final String WORKER_SCRIPT = "pytools_worker.py";
+    // items fetched per request when iterating on a generator of a worker
+    static final int ITERATOR_CHUNK_SIZE = 64;
+
+    private final VirtualEnvironment venv;
+    private final List<ProcessWorker> workers = new ArrayList<>();
+    private final EngineStats stats = new EngineStats();
+    private volatile boolean closed = false;
+
+    public ProcessWorkerPool(VirtualEnvironment venv, int processes) throws IOException {
+        if (processes < 1) {
+            throw new IllegalArgumentException("A python worker pool needs at least one process, not " + processes);
+        }
+        this.venv = venv;
+        Path script = installWorkerScript(Paths.get(venv.getPath()));
+
+        HashMap<String, String> environment = new HashMap<>();
+        environment.put("PYTHONPATH", String.join(File.pathSeparator, venv.getPaths()));
+        if (venv.getPycacheDirectory() != null) {
+            environment.put("PYTHONPYCACHEPREFIX", venv.getPycacheDirectory());
+        }
+        List<String> command = Arrays.asList(venv.getPythonExecutable(), "-u", script.toString());
+        try {
+            for (int i = 0; i < processes; i++) {
+                workers.add(new ProcessWorker("python-worker-" + i, command, environment));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        System.out.println("started " + processes + " python worker processes from " + venv.getPath());
+    }
+
+    // the script is copied next to the venv, so that its python can run it
+    private static Path installWorkerScript(Path venvPath) throws IOException {
+        Path script = venvPath.resolve(WORKER_SCRIPT);
+        try (InputStream in = ProcessWorkerPool.class.getResourceAsStream(WORKER_SCRIPT)) {
+            if (in == null) {
+                throw new IOException(WORKER_SCRIPT + " not found in the classpath.");
+            }
+            Path tmp = Files.createTempFile(venvPath, WORKER_SCRIPT, ".tmp");
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, script, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return script;
+    }
+
+    public int size() {
+        return workers.size();
+    }
+
+    @Override
+    @SneakyThrows
+    public void executePythonStatement(String pythonStatement) {
+        checkNotClosed();
+        List<CompletableFuture<Object[]>> responses = new ArrayList<>();
+        for (ProcessWorker worker: workers) {
+            responses.add(worker.send(ProcessWorker.EXEC, pythonStatement));
+        }
+        for (CompletableFuture<Object[]> response: responses) {
+            try {
+                response.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @Override
+    public Object callPythonMethod(String methodName, Object... args) {
+        checkNotClosed();
+        return call(leastLoaded(), methodName, args);
+    }
+
+    @Override
+    public PythonCallable bind(String moduleAlias, String functionName) {
+        checkNotClosed();
+        String methodName = moduleAlias + "." + functionName;
+        return new PythonCallable() {
+            @Override
+            public Object call(Object... args) {
+                return callPythonMethod(methodName, args);
+            }
+
+            @Override
+            public Object broadcast(Object... args) {
+                checkNotClosed();
+                Object result = null;
+                for (ProcessWorker worker: workers) {
+                    result = ProcessWorkerPool.this.call(worker, methodName, args);
+                }
+                return result;
+            }
+
+            @Override
+            public String getFunctionName() {
+                return functionName;
+            }
+        };
+    }
+
+    private Object call(ProcessWorker worker, String methodName, Object... args) {
+        return stats.record(() -> {
+            Object[] response = worker.request(ProcessWorker.CALL, methodName, args);
+            if ((byte) response[0] == ProcessWorker.ITERATOR) {
+                return new RemoteIterator(worker, (Long) response[1]);
+            }
+            return response[1];
+        });
+    }
+
+    private ProcessWorker leastLoaded() {
+        ProcessWorker selected = null;
+        for (ProcessWorker worker: workers) {
+            if (worker.isAlive() && (selected == null || worker.inFlight() < selected.inFlight())) {
+                selected = worker;
+            }
+        }
+        // all dead: the call fails with the reason
+        return selected != null ? selected : workers.get(0);
+    }
+
+    // the workers are already separate interpreters, another pool would start as many processes again
+    // (see python.worker.processes)
+    @Override
+    public boolean supportsNewInterpreter() {
+        return false;
+    }
+
+    @Override
+    public PythonEngine newInterpreter(boolean subInterpreter) {
+        throw new UnsupportedOperationException("The python worker processes can't be pooled: set the number of " +
+                "worker processes instead.");
+    }
+
+    @Override
+    public EngineStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public String getPythonExePath() {
+        return venv.getPythonExecutable();
+    }
+
+    @Override
+    public String getVirtualEnvironmentPath() {
+        return venv.getPath();
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("The python worker processes are closed.");
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (ProcessWorker worker: workers) {
+            worker.close();
+        }
+    }
+
+    /**
+     * A generator (or any iterator) returned by a function, consumed in chunks from the worker holding it.
+     */
+    private static class RemoteIterator implements Iterator<Object>, AutoCloseable {
+        private final ProcessWorker worker;
+        private final long iteratorId;
+        private Iterator<?> chunk = null;
+        private boolean done = false;
+
+        private RemoteIterator(ProcessWorker worker, long iteratorId) {
+            this.worker = worker;
+            this.iteratorId = iteratorId;
+        }
+
+        @Override
+        public synchronized boolean hasNext() {
+            while ((chunk == null || !chunk.hasNext()) && !done) {
+                List<?> response = (List<?>) worker.request(ProcessWorker.NEXT, iteratorId, ITERATOR_CHUNK_SIZE)[1];
+                chunk = ((List<?>) response.get(0)).iterator();
+                done = (Boolean) response.get(1);
+            }
+            return chunk != null && chunk.hasNext();
+        }
+
+        @Override
+        public synchronized Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk.next();
+        }
+
+        @Override
+        public synchronized void close() {
+            chunk = null;
+            if (!done) {
+                done = true;
+                if (worker.isAlive()) {
+                    worker.request(ProcessWorker.CLOSE_ITER, iteratorId);
+                }
+            }
+        }
+    }
+}
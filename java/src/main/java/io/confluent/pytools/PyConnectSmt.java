@@ -6,13 +6,16 @@ import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.common.config.ConfigDef.Importance;
 import org.apache.kafka.common.config.ConfigDef.NonNullValidator;
 import org.apache.kafka.common.config.ConfigDef.Type;
+import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.connect.connector.ConnectRecord;
+import org.apache.kafka.connect.data.SchemaAndValue;
 import org.apache.kafka.connect.header.Header;
 import org.apache.kafka.connect.transforms.Transformation;
 import org.apache.kafka.connect.transforms.util.SimpleConfig;
 
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.apache.kafka.common.config.ConfigDef.NO_DEFAULT_VALUE;
@@ -41,6 +44,18 @@ public class PyConnectSmt<R extends ConnectRecord<R>> implements Transformation<
     public static final String SETTINGS_CONF = "private.settings";
     public static final String SETTINGS_DOC = "A JSON string with private settings given to the init method.";
 
+    public static final String STRUCT_TRANSPORT_CONF = "struct.transport";
+    public static final String STRUCT_TRANSPORT_DOC = "How Struct payloads are passed to python: dict (dicts, lists for arrays) " +
+            "or json (legacy, JSON strings).";
+
+    public static final String POOL_SIZE_CONF = "interpreter.pool.size";
+    public static final String POOL_SIZE_DOC = "Number of python interpreters running the transform. " +
+            "apply() checks out a free interpreter, the init method is called on each of them. Must be 1 with the " +
+            "process engine: use python.worker.processes instead.";
+    public static final String EXEC_TYPE_CONF = "interpreter.exec.type";
+    public static final String EXEC_TYPE_DOC = "Execution type of the pooled interpreters: multi_thread, sub_interpreter " +
+            "or auto (sub-interpreters when the python version has a per-interpreter GIL, i.e. 3.12+).";
+
 
 
     /**
@@ -57,6 +72,62 @@ public class PyConnectSmt<R extends ConnectRecord<R>> implements Transformation<
      *   and we'll split it at the last dot and use an alias.
      */
 
+    public static final String VENV_CACHE_MAX_BYTES_CONF = "venv.cache.max.bytes";
+    public static final String VENV_CACHE_MAX_BYTES_DOC = "Size budget of the virtual environments kept in the working directory " +
+            "(0 = no limit). The virtual environments are reused across restarts, the least recently used ones are deleted " +
+            "when the budget is exceeded.";
+
+    public static final String VENV_SNAPSHOT_CONF = "venv.snapshot";
+    public static final String VENV_SNAPSHOT_DOC = "Snapshot of the packages of a virtual environment (exported with io.confluent.pytools.VenvSnapshot) " +
+            "unpacked in a new virtual environment instead of running pip install, when it was built for the same " +
+            "requirements and python ABI.";
+
+    public static final String PRECOMPILE_BYTECODE_CONF = "bytecode.precompile";
+    public static final String PRECOMPILE_BYTECODE_DOC = "Compile the site-packages of a new virtual environment to bytecode " +
+            "(checked-hash pycs, which stay valid when copied) when the environment is built, so that the interpreters " +
+            "don't compile the imported modules from source. The scripts are also compiled if pycache.dir is set " +
+            "(nothing is written in the scripts directory).";
+    public static final String PYCACHE_DIR_CONF = "pycache.dir";
+    public static final String PYCACHE_DIR_DOC = "Writable directory for the bytecode caches (python's sys.pycache_prefix), " +
+            "eg. when the scripts directory is read-only. If empty, they're written in __pycache__ next to the sources.";
+
+    public static final String SHARED_ENVIRONMENT_CONF = "python.environment.shared";
+    public static final String SHARED_ENVIRONMENT_DOC = "Share one python interpreter between the tasks and transforms of the worker " +
+            "running the same scripts with the same python executable and requirements, instead of one interpreter each. " +
+            "The calls to the shared interpreter are serialized and the scripts share their module globals. " +
+            "The init method and its settings are part of the identity of the interpreter (the tasks and transforms " +
+            "with a different init method or settings don't share it), but the init method is still called by each of them: " +
+            "the module globals set by init are the ones of its last call (eg. the offsets of the last task started).";
+
+    public static final String ENGINE_CONF = "python.engine";
+    public static final String ENGINE_DOC = "What runs the python code: pemja (an interpreter embedded in the JVM), " +
+            "process (python worker processes, see python.worker.processes), graalpy (GraalPy in the JVM, for pure python " +
+            "code: pemja is used if the requirements contain native extensions) or stub (no python: the functions return " +
+            "their first argument, to measure the overhead of the connector itself).";
+    public static final String WORKER_PROCESSES_CONF = "python.worker.processes";
+    public static final String WORKER_PROCESSES_DOC = "Number of python worker processes of the process engine, started from the " +
+            "virtual environment. The calls are spread across the processes (no shared GIL) and a crash of a native extension " +
+            "doesn't take the worker down. The arguments and results must be None, bool, int, float, str, bytes, lists and " +
+            "dicts, and the module globals are per process.";
+
+    public static final String COALESCE_ENTRY_POINT_CONF = "coalesce.entry.point";
+    public static final String COALESCE_ENTRY_POINT_DOC = "Python batch function (in the same format as entry.point) called instead of " +
+            "the entry point with the records of concurrent apply() calls: it gets a list of records and returns the list of " +
+            "their results in the same order (None drops a record). Useful with python.environment.shared, when the tasks " +
+            "share an interpreter. The batches run in the first interpreter of the pool.";
+    public static final String COALESCE_MAX_RECORDS_CONF = "coalesce.max.records";
+    public static final String COALESCE_MAX_RECORDS_DOC = "Maximum number of records per call of the batch function.";
+    public static final String COALESCE_LINGER_MS_CONF = "coalesce.linger.ms";
+    public static final String COALESCE_LINGER_MS_DOC = "How long a record waits for others when the interpreter is idle " +
+            "(0: the records are only batched while the interpreter is busy).";
+
+    public static final String WARMUP_RECORDS_CONF = "warmup.records";
+    public static final String WARMUP_RECORDS_DOC = "Sample records run through the transform (on every interpreter) when the SMT is configured, " +
+            "so that the first real records don't pay for the lazy imports and model loading: a JSON list of " +
+            "{\"key\": ..., \"value\": ..., \"topic\": ...} objects, inline or in a file, with optional \"key_schema\" and " +
+            "\"value_schema\" definitions (Connect JSON or Avro) for the records with a schema. When the records are coalesced, " +
+            "the samples go through the batch function instead. The results are discarded.";
+
     public static final ConfigDef CONFIG_DEF = new ConfigDef()
             .define(PYTHON_PATH_CONF, Type.STRING, "", new NonNullValidator(), Importance.HIGH, PYTHON_PATH_DOC)
             .define(SCRIPTS_DIR_CONF, Type.STRING, NO_DEFAULT_VALUE, new NonNullValidator(), Importance.HIGH, SCRIPTS_DIR_DOC)
@@ -64,10 +135,34 @@ public class PyConnectSmt<R extends ConnectRecord<R>> implements Transformation<
             .define(ENTRY_POINT_CONF, Type.STRING, NO_DEFAULT_VALUE, new NonNullValidator(), Importance.HIGH, ENTRY_POINT_DOC)
             .define(CONFIGURE_CONF, Type.STRING, NO_DEFAULT_VALUE, new NonNullValidator(), Importance.MEDIUM, CONFIGURE_DOC)
             .define(SETTINGS_CONF, Type.STRING, NO_DEFAULT_VALUE, new NonNullValidator(), Importance.LOW, SETTINGS_DOC)
-            .define(OFFLINE_INSTALL_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, OFFLINE_INSTALL_DOC);
+            .define(OFFLINE_INSTALL_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, OFFLINE_INSTALL_DOC)
+            .define(STRUCT_TRANSPORT_CONF, Type.STRING, PyJavaIO.STRUCT_TRANSPORT_DICT,
+                    ConfigDef.ValidString.in(PyJavaIO.STRUCT_TRANSPORT_DICT, PyJavaIO.STRUCT_TRANSPORT_JSON),
+                    Importance.LOW, STRUCT_TRANSPORT_DOC)
+            .define(POOL_SIZE_CONF, Type.INT, 1, ConfigDef.Range.atLeast(1), Importance.MEDIUM, POOL_SIZE_DOC)
+            .define(EXEC_TYPE_CONF, Type.STRING, PythonHostPool.EXEC_TYPE_AUTO,
+                    ConfigDef.ValidString.in(PythonHostPool.EXEC_TYPE_AUTO, PythonHostPool.EXEC_TYPE_MULTI_THREAD,
+                            PythonHostPool.EXEC_TYPE_SUB_INTERPRETER), Importance.LOW, EXEC_TYPE_DOC)
+            .define(VENV_CACHE_MAX_BYTES_CONF, Type.LONG, 0L, ConfigDef.Range.atLeast(0), Importance.LOW, VENV_CACHE_MAX_BYTES_DOC)
+            .define(SHARED_ENVIRONMENT_CONF, Type.BOOLEAN, false, Importance.LOW, SHARED_ENVIRONMENT_DOC)
+            .define(PRECOMPILE_BYTECODE_CONF, Type.BOOLEAN, true, Importance.LOW, PRECOMPILE_BYTECODE_DOC)
+            .define(PYCACHE_DIR_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, PYCACHE_DIR_DOC)
+            .define(VENV_SNAPSHOT_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, VENV_SNAPSHOT_DOC)
+            .define(ENGINE_CONF, Type.STRING, PythonHost.ENGINE_PEMJA,
+                    ConfigDef.ValidString.in(PythonHost.ENGINE_PEMJA, PythonHost.ENGINE_PROCESS, PythonHost.ENGINE_GRAALPY,
+                            PythonHost.ENGINE_STUB),
+                    Importance.MEDIUM, ENGINE_DOC)
+            .define(WORKER_PROCESSES_CONF, Type.INT, 1, ConfigDef.Range.atLeast(1), Importance.MEDIUM, WORKER_PROCESSES_DOC)
+            .define(COALESCE_ENTRY_POINT_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, COALESCE_ENTRY_POINT_DOC)
+            .define(COALESCE_MAX_RECORDS_CONF, Type.INT, 100, ConfigDef.Range.atLeast(1), Importance.LOW, COALESCE_MAX_RECORDS_DOC)
+            .define(COALESCE_LINGER_MS_CONF, Type.LONG, 0L, ConfigDef.Range.atLeast(0), Importance.LOW, COALESCE_LINGER_MS_DOC)
+            .define(WARMUP_RECORDS_CONF, Type.STRING, "", WarmupRecords.VALIDATOR, Importance.LOW, WARMUP_RECORDS_DOC);
 
     private String jsonPrivateSettings;
-    private PythonHost pythonHost;
+    private PythonHostPool pythonHosts;
+    // the batch function, if the records are coalesced
+    private PythonCallable coalescedTransform;
+    private SchemaConverterCache converters;
 
     @Override
     public ConfigDef config() {
@@ -77,6 +172,11 @@ public class PyConnectSmt<R extends ConnectRecord<R>> implements Transformation<
     @Override
     public void close() {
         // delete the workingDirectory (venv)?
+        if (pythonHosts != null) {
+            pythonHosts.forEach(PythonHost::close);
+            pythonHosts = null;
+            coalescedTransform = null;
+        }
     }
 
     @Override
@@ -91,8 +191,25 @@ public class PyConnectSmt<R extends ConnectRecord<R>> implements Transformation<
         String workingDir = config.getString(WORKING_DIR_CONF);
         String initMethod = config.getString(CONFIGURE_CONF);
         String localDependenciesDir = config.getString(OFFLINE_INSTALL_CONF);
+        int poolSize = config.getInt(POOL_SIZE_CONF);
+        String execType = config.getString(EXEC_TYPE_CONF);
+        if (poolSize > 1 && config.getString(ENGINE_CONF).equals(PythonHost.ENGINE_PROCESS)) {
+            // each interpreter of the pool would start its own set of worker processes
+            throw new ConfigException(POOL_SIZE_CONF, poolSize, "The process engine runs a single pool of worker " +
+                    "processes: set " + WORKER_PROCESSES_CONF + " instead of " + POOL_SIZE_CONF + ".");
+        }
+        EnvironmentOptions environmentOptions = new EnvironmentOptions()
+                .venvCacheMaxBytes(config.getLong(VENV_CACHE_MAX_BYTES_CONF))
+                .sharedEnvironment(config.getBoolean(SHARED_ENVIRONMENT_CONF))
+                .precompileBytecode(config.getBoolean(PRECOMPILE_BYTECODE_CONF))
+                .pycacheDirectory(config.getString(PYCACHE_DIR_CONF))
+                .venvSnapshot(config.getString(VENV_SNAPSHOT_CONF))
+                .engine(config.getString(ENGINE_CONF))
+                .workerProcesses(config.getInt(WORKER_PROCESSES_CONF))
+                .init(initMethod, config.getString(SETTINGS_CONF));
 
         jsonPrivateSettings = config.getString(SETTINGS_CONF);
+        converters = new SchemaConverterCache(config.getString(STRUCT_TRANSPORT_CONF).equals(PyJavaIO.STRUCT_TRANSPORT_JSON));
 
         System.out.println("initializing the python environment");
 
@@ -108,43 +225,86 @@ public class PyConnectSmt<R extends ConnectRecord<R>> implements Transformation<
         }
         System.out.println("working directory: " + workingDirectory);
 
-        pythonHost = new PythonHost(pythonExecutable, Paths.get(scriptsDir).toFile(), entryPoint, workingDirectory, localDependenciesDir);
+        PythonHost pythonHost = new PythonHost(pythonExecutable, Paths.get(scriptsDir).toFile(), entryPoint, workingDirectory,
+                localDependenciesDir, environmentOptions);
+        boolean subInterpreters = false;
+        if (poolSize > 1) {
+            subInterpreters = PythonHostPool.useSubInterpreters(execType, PyUtils.getPythonVersion(pythonExecutable));
+            System.out.println("interpreter pool: " + poolSize + " interpreters (" +
+                    (subInterpreters ? PythonHostPool.EXEC_TYPE_SUB_INTERPRETER : PythonHostPool.EXEC_TYPE_MULTI_THREAD) + ")");
+        }
+        pythonHosts = PythonHostPool.build(pythonHost, poolSize, subInterpreters);
 
         // call a configure() function in python?
         if (!initMethod.equals("")) {
-            pythonHost.callPythonMethod(initMethod, jsonPrivateSettings);
+            pythonHosts.forEach(host -> host.method(initMethod).broadcast(jsonPrivateSettings));
             System.out.println("calling the init method: " + initMethod);
         }
+
+        String coalesceEntryPoint = config.getString(COALESCE_ENTRY_POINT_CONF);
+        if (!coalesceEntryPoint.equals("")) {
+            coalescedTransform = pythonHost.coalescingEntryPoint(coalesceEntryPoint,
+                    config.getInt(COALESCE_MAX_RECORDS_CONF), config.getLong(COALESCE_LINGER_MS_CONF));
+            System.out.println("coalescing the records in batches: " + coalesceEntryPoint);
+        }
+
+        WarmupRecords.run("transform", WarmupRecords.load(config.getString(WARMUP_RECORDS_CONF)), this::warmup);
+    }
+
+    // runs the samples through each interpreter of the pool, or through the batch function if the records are coalesced
+    // (apply() only calls the batch function then), the results are dropped
+    private void warmup(List<Object> samples) {
+        if (coalescedTransform != null) {
+            warmup(coalescedTransform, samples);
+            return;
+        }
+        pythonHosts.forEach(host -> warmup(host.entryPoint(), samples));
+    }
+
+    private void warmup(PythonCallable transform, List<Object> samples) {
+        for (Object sample: samples) {
+            if (!(sample instanceof Map)) {
+                throw new IllegalArgumentException("A warm-up record must be a JSON object, got: " + sample);
+            }
+            // no record is built: the SMT doesn't know whether it transforms source or sink records
+            Map<?, ?> fields = (Map<?, ?>) sample;
+            Object topic = fields.get(WarmupRecords.TOPIC);
+            SchemaAndValue key = WarmupRecords.withSchema(fields.get(WarmupRecords.KEY), fields.get(WarmupRecords.KEY_SCHEMA));
+            SchemaAndValue value = WarmupRecords.withSchema(fields.get(WarmupRecords.VALUE), fields.get(WarmupRecords.VALUE_SCHEMA));
+            Object pyResult = transform.call(PyJavaIO.recordToPython(topic == null ? "warmup" : topic.toString(),
+                    key.schema(), key.value(), value.schema(), value.value(), converters));
+            if (pyResult instanceof Map) {
+                // converted back like in apply(), where a result that doesn't match the schemas keeps the original record
+                Map<?, ?> result = (Map<?, ?>) pyResult;
+                try {
+                    converters.keyConverter(key.schema()).fromPython(result.get("key"));
+                    converters.valueConverter(value.schema()).fromPython(result.get("value"));
+                } catch (Exception e) {
+                    System.out.println("Error processing returned value from python: " + e);
+                }
+            }
+        }
     }
 
     @Override
     public R apply(R record) {
-        System.out.println("transforming 1 record");
-
-        Object pyResult = pythonHost.callEntryPoint(toPython(record));
+        Object pythonRecord = toPython(record);
+        Object pyResult = coalescedTransform != null ? coalescedTransform.call(pythonRecord)
+                : pythonHosts.withHost(host -> host.entryPoint().call(pythonRecord));
         if (pyResult == null) {
-            System.out.println("null returned by python, message will be dropped");
+            log.debug("null returned by python, message will be dropped");
             return null;
         }
-        System.out.println("returned by python: " + pyResult.toString());
+        log.trace("returned by python: {}", pyResult);
 
         R newRecord = fromPython(pyResult, record);
-        System.out.println("after conversion fromPython: " + newRecord.toString());
+        log.trace("after conversion fromPython: {}", newRecord);
 
         return newRecord;
     }
 
     public Object toPython(R record) {
-        HashMap<String, Object> obj = new HashMap<>();
-        obj.put("topic", record.topic());
-
-        obj.put("key_schema", PyJavaIO.normalizedTypeName(record.keySchema()));
-        obj.put("key", PyJavaIO.payloadTyped(record.key(), record.keySchema().toString()));
-
-        obj.put("value_schema", PyJavaIO.normalizedTypeName(record.valueSchema()));
-        obj.put("value", PyJavaIO.payloadTyped(record.value(), record.valueSchema().toString()));
-
-        return obj;
+        return PyJavaIO.recordToPython(record, converters);
     }
 
     public Object headersToPython(R record) {
@@ -156,21 +316,6 @@ public class PyConnectSmt<R extends ConnectRecord<R>> implements Transformation<
     }
 
     public R fromPython(Object pythonResult, R originalRecord) {
-        try {
-            HashMap<String, String> newRecordData = (HashMap<String, String>) pythonResult;
-
-            // the python script cannot/shouldn't change the type of the key or value
-            return originalRecord.newRecord(
-                    newRecordData.get("topic"),
-                    originalRecord.kafkaPartition(),
-                    originalRecord.keySchema(),
-                    PyJavaIO.typedParse(originalRecord.keySchema(), newRecordData.get("key")),
-                    originalRecord.valueSchema(),
-                    PyJavaIO.typedParse(originalRecord.valueSchema(), newRecordData.get("value")),
-                    originalRecord.timestamp());
-        } catch (Exception e) {
-            System.out.println("Error processing returned value from python: " + e);
-            return originalRecord;
-        }
+        return PyJavaIO.recordFromPython(pythonResult, originalRecord, converters);
     }
 }
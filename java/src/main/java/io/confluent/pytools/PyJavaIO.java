@@ -1,6 +1,6 @@
 package io.confluent.pytools;
 
-import lombok.SneakyThrows;
+import org.apache.kafka.connect.connector.ConnectRecord;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.SchemaBuilder;
@@ -17,6 +17,10 @@ import java.util.Objects;
 import static java.util.Map.entry;
 
 public class PyJavaIO {
+    // how Struct payloads are passed to python: as dicts (and lists/dicts for arrays/maps), or as JSON strings
+    public static final String STRUCT_TRANSPORT_DICT = "dict";
+    public static final String STRUCT_TRANSPORT_JSON = "json";
+
     static Struct jsonToStruct(Schema itemSchema, String jsonString) {
         Struct rec = new Struct(itemSchema);
         JSONObject jo = new JSONObject(jsonString);
@@ -50,19 +54,37 @@ public class PyJavaIO {
     [C = char
     [L = any non-primitives(Object)
      */
+    private static final Map<String, Schema> CLASS_NAME_TO_SCHEMA = Map.ofEntries(
+            entry("java.lang.String", Schema.STRING_SCHEMA),
+            entry("java.lang.Short", Schema.INT16_SCHEMA),
+            entry("java.lang.Integer", Schema.INT32_SCHEMA),
+            entry("java.lang.Long", Schema.INT64_SCHEMA),
+            entry("java.lang.Float", Schema.FLOAT32_SCHEMA),
+            entry("java.lang.Double", Schema.FLOAT64_SCHEMA),
+            entry("java.lang.Boolean", Schema.BOOLEAN_SCHEMA),
+            entry("[B", Schema.BYTES_SCHEMA),
+            entry("java.lang.Byte", Schema.BYTES_SCHEMA) // ???
+    );
+
+    private static final Map<Class<?>, Schema> CLASS_TO_SCHEMA = Map.ofEntries(
+            entry(String.class, Schema.STRING_SCHEMA),
+            entry(Short.class, Schema.INT16_SCHEMA),
+            entry(Integer.class, Schema.INT32_SCHEMA),
+            entry(Long.class, Schema.INT64_SCHEMA),
+            entry(Float.class, Schema.FLOAT32_SCHEMA),
+            entry(Double.class, Schema.FLOAT64_SCHEMA),
+            entry(Boolean.class, Schema.BOOLEAN_SCHEMA),
+            entry(byte[].class, Schema.BYTES_SCHEMA),
+            entry(Byte.class, Schema.BYTES_SCHEMA) // ???
+    );
+
     static Schema getSchemaFromJavaClassName(String className) {
-        Map<String, Schema> classToSchemaMap = Map.ofEntries(
-                entry("java.lang.String", Schema.STRING_SCHEMA),
-                entry("java.lang.Short", Schema.INT16_SCHEMA),
-                entry("java.lang.Integer", Schema.INT32_SCHEMA),
-                entry("java.lang.Long", Schema.INT64_SCHEMA),
-                entry("java.lang.Float", Schema.FLOAT32_SCHEMA),
-                entry("java.lang.Double", Schema.FLOAT64_SCHEMA),
-                entry("java.lang.Boolean", Schema.BOOLEAN_SCHEMA),
-                entry("[B", Schema.BYTES_SCHEMA),
-                entry("java.lang.Byte", Schema.BYTES_SCHEMA) // ???
-        );
-        Schema correspondingSchema = classToSchemaMap.get(className);
+        Schema correspondingSchema = CLASS_NAME_TO_SCHEMA.get(className);
+        return Objects.requireNonNullElse(correspondingSchema, Schema.STRING_SCHEMA);
+    }
+
+    static Schema getSchemaFromJavaClass(Class<?> javaClass) {
+        Schema correspondingSchema = CLASS_TO_SCHEMA.get(javaClass);
         return Objects.requireNonNullElse(correspondingSchema, Schema.STRING_SCHEMA);
     }
 
@@ -159,17 +181,6 @@ public class PyJavaIO {
         return "{" + itemsJoined + "}";
     }
 
-    @SneakyThrows
-    static Object payloadTyped(Object payload, String schema) {
-        // if the schema is a Struct, we pass the payload as a JSON String
-        // otherwise if it's a basic type, we pass the toString()
-        if (schema.contains("STRUCT")) {
-            return structToJSON((Struct)payload);
-        } else {
-            return payload;
-        }
-    }
-
     static String normalizedTypeName(Schema schema) {
         return schema.toString()
                 .replace("}", "")
@@ -178,4 +189,57 @@ public class PyJavaIO {
                 .replaceFirst("Schema", "")
                 .replaceFirst("STRUCT", "JSON");
     }
+
+    /**
+     * Converts a Connect record into the dict passed to python transforms
+     * (topic, key_schema, key, value_schema, value).
+     *
+     * @param converters: the converters of the key and value schemas
+     */
+    static HashMap<String, Object> recordToPython(ConnectRecord<?> record, SchemaConverterCache converters) {
+        return recordToPython(record.topic(), record.keySchema(), record.key(), record.valueSchema(), record.value(), converters);
+    }
+
+    // the same dict, from the parts of a record (eg. a warm-up sample, which isn't a record of the connector's type)
+    static HashMap<String, Object> recordToPython(String topic, Schema keySchema, Object key, Schema valueSchema, Object value,
+                                                  SchemaConverterCache converters) {
+        SchemaConverter keyConverter = converters.keyConverter(keySchema);
+        SchemaConverter valueConverter = converters.valueConverter(valueSchema);
+
+        HashMap<String, Object> obj = new HashMap<>();
+        obj.put("topic", topic);
+
+        obj.put("key_schema", keyConverter.typeName());
+        obj.put("key", keyConverter.toPython(key));
+
+        obj.put("value_schema", valueConverter.typeName());
+        obj.put("value", valueConverter.toPython(value));
+
+        return obj;
+    }
+
+    /**
+     * Builds a new record from the dict returned by a python transform.
+     * The python script cannot/shouldn't change the type of the key or value,
+     * so the schemas of the original record are kept.
+     *
+     * @param converters: the converters of the key and value schemas
+     */
+    static <R extends ConnectRecord<R>> R recordFromPython(Object pythonResult, R originalRecord, SchemaConverterCache converters) {
+        try {
+            HashMap<String, Object> newRecordData = (HashMap<String, Object>) pythonResult;
+
+            return originalRecord.newRecord(
+                    (String) newRecordData.get("topic"),
+                    originalRecord.kafkaPartition(),
+                    originalRecord.keySchema(),
+                    converters.keyConverter(originalRecord.keySchema()).fromPython(newRecordData.get("key")),
+                    originalRecord.valueSchema(),
+                    converters.valueConverter(originalRecord.valueSchema()).fromPython(newRecordData.get("value")),
+                    originalRecord.timestamp());
+        } catch (Exception e) {
+            System.out.println("Error processing returned value from python: " + e);
+            return originalRecord;
+        }
+    }
 }
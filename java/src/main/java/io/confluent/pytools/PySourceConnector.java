@@ -1,15 +1,22 @@
 package io.confluent.pytools;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.kafka.common.config.Config;
 import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.config.ConfigValue;
 import org.apache.kafka.connect.connector.Task;
 import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.source.SourceConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -19,9 +26,17 @@ import java.util.stream.Collectors;
 public class PySourceConnector extends SourceConnector {
 
     private static Logger log = LoggerFactory.getLogger(PySourceConnector.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(DeserializationFeature.USE_LONG_FOR_INTS);
+
     private PySourceConnectorConfig config;
     private Map<String, String> props;
 
+    // work units returned by the python partitions method, null if not configured
+    private PythonHost pythonHost;
+    private volatile List<Object> workUnits;
+    private Thread workUnitsMonitor;
+    private volatile boolean monitoring;
+
     @Override
     public String version() {
         return "0.1";
@@ -38,6 +53,66 @@ public class PySourceConnector extends SourceConnector {
                     e
             );
         }
+
+        String partitionsMethod = config.getPartitionsMethod();
+        if (!partitionsMethod.equals("")) {
+            startPythonHost(partitionsMethod);
+            workUnits = fetchWorkUnits();
+            System.out.println("work units returned by python: " + workUnits);
+            startMonitoring(config.getPartitionsPollIntervalMs());
+        }
+    }
+
+    private void startPythonHost(String partitionsMethod) {
+        String pythonExecutable = PyUtils.defaultPythonExecutablePath().toString();
+        if (!config.getPythonPath().equals("")) {
+            pythonExecutable = config.getPythonPath();
+        }
+        String workingDirectory = config.getScriptsDir();
+        if (!config.getWorkingDir().equals("")) {
+            workingDirectory = config.getWorkingDir();
+        }
+        try {
+            pythonHost = new PythonHost(pythonExecutable, Paths.get(config.getScriptsDir()).toFile(), partitionsMethod,
+                    workingDirectory, config.getOfflineInstallPath(), config.getEnvironmentOptions());
+        } catch (IOException e) {
+            throw new ConnectException("Could not initialize the python environment of the connector", e);
+        }
+    }
+
+    private List<Object> fetchWorkUnits() {
+        Object units = pythonHost.entryPoint().call(config.getPythonSettings());
+        if (!(units instanceof List)) {
+            throw new ConnectException("The python partitions method must return a list, got: " + units);
+        }
+        return new ArrayList<>((List<?>) units);
+    }
+
+    /**
+     * Calls the python partitions method periodically and requests a reconfiguration of the tasks
+     * when the list of work units changes.
+     */
+    private void startMonitoring(long intervalMs) {
+        monitoring = true;
+        workUnitsMonitor = new Thread(() -> {
+            while (monitoring) {
+                try {
+                    Thread.sleep(intervalMs);
+                    List<Object> units = fetchWorkUnits();
+                    if (!units.equals(workUnits)) {
+                        System.out.println("work units changed: " + units);
+                        workUnits = units;
+                        context.requestTaskReconfiguration();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    log.error("Could not refresh the work units", e);
+                }
+            }
+        }, "python-work-units-monitor");
+        workUnitsMonitor.setDaemon(true);
+        workUnitsMonitor.start();
     }
 
     @Override
@@ -47,6 +122,10 @@ public class PySourceConnector extends SourceConnector {
 
     @Override
     public List<Map<String, String>> taskConfigs(int maxTasks) {
+        List<Object> units = workUnits;
+        if (units != null) {
+            return assignedTaskConfigs(units, maxTasks);
+        }
         List<Map<String, String>> taskConfigs = new ArrayList<>();
         for (int i = 0; i < maxTasks; i++) {
             Map<String, String> taskConfig = new HashMap<>(this.props);
@@ -56,8 +135,66 @@ public class PySourceConnector extends SourceConnector {
         return taskConfigs;
     }
 
+    private List<Map<String, String>> assignedTaskConfigs(List<Object> units, int maxTasks) {
+        List<Map<String, String>> taskConfigs = new ArrayList<>();
+        List<List<Object>> assignments = assignWorkUnits(units, maxTasks);
+        for (int i = 0; i < assignments.size(); i++) {
+            Map<String, String> taskConfig = new HashMap<>(this.props);
+            taskConfig.put(PySourceConnectorTask.TASK_ID, Integer.toString(i));
+            taskConfig.put(PySourceConnectorTask.TASK_ASSIGNMENT, workUnitsToJson(assignments.get(i)));
+            taskConfigs.add(taskConfig);
+        }
+        return taskConfigs;
+    }
+
+    /**
+     * Spreads the work units evenly (round-robin) over at most maxTasks tasks.
+     * There's no task when there's no work unit.
+     */
+    static List<List<Object>> assignWorkUnits(List<Object> units, int maxTasks) {
+        int numTasks = Math.min(maxTasks, units.size());
+        List<List<Object>> assignments = new ArrayList<>(numTasks);
+        for (int i = 0; i < numTasks; i++) {
+            assignments.add(new ArrayList<>());
+        }
+        for (int i = 0; i < units.size() && numTasks > 0; i++) {
+            assignments.get(i % numTasks).add(units.get(i));
+        }
+        return assignments;
+    }
+
+    static String workUnitsToJson(List<Object> units) {
+        try {
+            return MAPPER.writeValueAsString(units);
+        } catch (JsonProcessingException e) {
+            throw new ConnectException("The work units can't be serialized to JSON: " + units, e);
+        }
+    }
+
+    static ArrayList<Object> workUnitsFromJson(String json) {
+        try {
+            return MAPPER.readValue(json, new TypeReference<ArrayList<Object>>() {});
+        } catch (JsonProcessingException e) {
+            throw new ConnectException("Invalid task assignment: " + json, e);
+        }
+    }
+
     @Override
     public void stop() {
+        if (workUnitsMonitor != null) {
+            monitoring = false;
+            workUnitsMonitor.interrupt();
+            try {
+                workUnitsMonitor.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            workUnitsMonitor = null;
+        }
+        if (pythonHost != null) {
+            pythonHost.close();
+            pythonHost = null;
+        }
     }
 
     @Override
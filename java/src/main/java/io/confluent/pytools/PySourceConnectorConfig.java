@@ -38,6 +38,124 @@ public class PySourceConnectorConfig extends AbstractConfig {
     public static final String SETTINGS_CONF = "private.settings";
     public static final String SETTINGS_DOC = "A JSON string with private settings given to the init (task start) method.";
 
+    public static final String TRANSFORM_ENTRY_POINT_CONF = "transform.entry.point";
+    public static final String TRANSFORM_ENTRY_POINT_DOC = "Optional entry point (library + method name) for a (python) batch transform. " +
+            "It's called once per poll() with the list of polled records and returns the list of transformed records.";
+    public static final String STRUCT_TRANSPORT_CONF = "struct.transport";
+    public static final String STRUCT_TRANSPORT_DOC = "How Struct payloads are passed to the batch transform: dict (dicts, lists for arrays) " +
+            "or json (legacy, JSON strings).";
+
+    public static final String KEY_SCHEMA_CONF = "key.schema";
+    public static final String KEY_SCHEMA_DOC = "Optional schema of the record keys, as a Connect JSON schema or an Avro schema. " +
+            "When set, the keys returned by python are converted to this schema instead of inferring a schema per record.";
+    public static final String VALUE_SCHEMA_CONF = "value.schema";
+    public static final String VALUE_SCHEMA_DOC = "Optional schema of the record values, as a Connect JSON schema or an Avro schema. " +
+            "When set, the values returned by python are converted to this schema instead of inferring a schema per record.";
+    public static final String SEPARATE_VALUE_STRUCT_CONF = "inferred.value.struct.separate";
+    public static final String SEPARATE_VALUE_STRUCT_DOC = "Name the structs inferred for the record values <entry point>.value, " +
+            "versioned separately from the key structs, instead of <entry point>.key like the keys. " +
+            "Changes the schema name of the values of the existing topics: the new schemas may be rejected by Schema Registry " +
+            "compatibility checks.";
+
+    public static final String WARMUP_RECORDS_CONF = "warmup.records";
+    public static final String WARMUP_RECORDS_DOC = "Sample records, in the format returned by the python poll method, converted and run " +
+            "through the batch transform when the task starts, so that the first real records don't pay for the lazy imports " +
+            "and model loading: a JSON list, inline or in a file. The poll method itself isn't called, the results are discarded.";
+
+    public static final String ASYNC_STARTUP_CONF = "async.startup.enabled";
+    public static final String ASYNC_STARTUP_DOC = "Build the python environment (venv, pip install, imports and init method) in the background: " +
+            "start() returns immediately and poll() returns no records until python is ready. " +
+            "Keeps long environment builds from holding the worker (eg. during rebalances).";
+
+    public static final String PREFETCH_ENABLED_CONF = "prefetch.enabled";
+    public static final String PREFETCH_ENABLED_DOC = "Call the python poll method from a dedicated thread that queues the records for poll(), " +
+            "so that python fetches while the previous records are being produced.";
+    public static final String PREFETCH_MAX_RECORDS_CONF = "prefetch.max.records";
+    public static final String PREFETCH_MAX_RECORDS_DOC = "Maximum number of records queued by the prefetch thread before it waits for poll().";
+    public static final String PREFETCH_MAX_BYTES_CONF = "prefetch.max.bytes";
+    public static final String PREFETCH_MAX_BYTES_DOC = "Maximum (estimated) size in bytes of the keys and values queued by the prefetch thread " +
+            "before it waits for poll().";
+
+    public static final String BATCH_MAX_RECORDS_CONF = "batch.max.records";
+    public static final String BATCH_MAX_RECORDS_DOC = "Maximum number of records accumulated from the python poll method for one poll(), " +
+            "and number of items pulled at a time from a python generator.";
+    public static final String BATCH_MAX_BYTES_CONF = "batch.max.bytes";
+    public static final String BATCH_MAX_BYTES_DOC = "Maximum (estimated) size in bytes of the keys and values accumulated for one poll(), " +
+            "also applied to the items pulled from a python generator.";
+    public static final String BATCH_LINGER_MS_CONF = "batch.linger.ms";
+    public static final String BATCH_LINGER_MS_DOC = "Maximum time poll() spends filling a batch: the python poll method is called again " +
+            "while the batch isn't full (batch.max.records/batch.max.bytes), python returns records and this delay hasn't elapsed. " +
+            "With 0, it's called once per poll().";
+
+    public static final String SOURCE_PARTITIONS_CONF = "source.partitions";
+    public static final String SOURCE_PARTITIONS_DOC = "Optional JSON list of the source partitions used by the python records ('source_partition'), " +
+            "whose stored offsets are loaded when the task starts. Each partition is a JSON object or a basic type.";
+
+    public static final String PARTITIONS_METHOD_CONF = "partitions.method";
+    public static final String PARTITIONS_METHOD_DOC = "Optional entry point (library + method name) of a python method called by the connector, " +
+            "with the private settings, that returns the list of work units (shards, files, tables...). " +
+            "The work units are spread over the tasks, which receive their assignment in the init method.";
+    public static final String PARTITIONS_POLL_INTERVAL_MS_CONF = "partitions.poll.interval.ms";
+    public static final String PARTITIONS_POLL_INTERVAL_MS_DOC = "How often the partitions method is called to detect changes in the work units " +
+            "(the tasks are reconfigured when the list changes).";
+
+    public static final String VENV_CACHE_MAX_BYTES_CONF = "venv.cache.max.bytes";
+    public static final String VENV_CACHE_MAX_BYTES_DOC = "Size budget of the virtual environments kept in the working directory " +
+            "(0 = no limit). The virtual environments are reused across restarts, the least recently used ones are deleted " +
+            "when the budget is exceeded.";
+
+    public static final String VENV_SNAPSHOT_CONF = "venv.snapshot";
+    public static final String VENV_SNAPSHOT_DOC = "Snapshot of the packages of a virtual environment (exported with io.confluent.pytools.VenvSnapshot) " +
+            "unpacked in a new virtual environment instead of running pip install, when it was built for the same " +
+            "requirements and python ABI.";
+
+    public static final String PRECOMPILE_BYTECODE_CONF = "bytecode.precompile";
+    public static final String PRECOMPILE_BYTECODE_DOC = "Compile the site-packages of a new virtual environment to bytecode " +
+            "(checked-hash pycs, which stay valid when copied) when the environment is built, so that the interpreters " +
+            "don't compile the imported modules from source. The scripts are also compiled if pycache.dir is set " +
+            "(nothing is written in the scripts directory).";
+    public static final String PYCACHE_DIR_CONF = "pycache.dir";
+    public static final String PYCACHE_DIR_DOC = "Writable directory for the bytecode caches (python's sys.pycache_prefix), " +
+            "eg. when the scripts directory is read-only. If empty, they're written in __pycache__ next to the sources.";
+
+    public static final String SHARED_ENVIRONMENT_CONF = "python.environment.shared";
+    public static final String SHARED_ENVIRONMENT_DOC = "Share one python interpreter between the tasks and transforms of the worker " +
+            "running the same scripts with the same python executable and requirements, instead of one interpreter each. " +
+            "The calls to the shared interpreter are serialized and the scripts share their module globals. " +
+            "The init method and its settings are part of the identity of the interpreter (the tasks and transforms " +
+            "with a different init method or settings don't share it), but the init method is still called by each of them: " +
+            "the module globals set by init are the ones of its last call (eg. the offsets of the last task started).";
+
+    public static final String ENGINE_CONF = "python.engine";
+    public static final String ENGINE_DOC = "What runs the python code: pemja (an interpreter embedded in the JVM), " +
+            "process (python worker processes, see python.worker.processes), graalpy (GraalPy in the JVM, for pure python " +
+            "code: pemja is used if the requirements contain native extensions) or stub (no python: the functions return " +
+            "their first argument, to measure the overhead of the connector itself).";
+    public static final String WORKER_PROCESSES_CONF = "python.worker.processes";
+    public static final String WORKER_PROCESSES_DOC = "Number of python worker processes of the process engine, started from the " +
+            "virtual environment. The calls are spread across the processes (no shared GIL) and a crash of a native extension " +
+            "doesn't take the worker down. The arguments and results must be None, bool, int, float, str, bytes, lists and " +
+            "dicts, and the module globals are per process.";
+
+    private static final Validator SOURCE_PARTITIONS_VALIDATOR = (name, value) -> {
+        try {
+            SourceOffsets.parsePartitions((String) value);
+        } catch (Exception e) {
+            throw new ConfigException(name, value, e.getMessage());
+        }
+    };
+
+    private static final Validator SCHEMA_DEFINITION_VALIDATOR = (name, value) -> {
+        if (value == null || value.toString().equals("")) {
+            return;
+        }
+        try {
+            SchemaDefinition.parse(value.toString());
+        } catch (Exception e) {
+            throw new ConfigException(name, value, e.getMessage());
+        }
+    };
+
     public PySourceConnectorConfig(ConfigDef config, Map<String, String> parsedConfig) {
         super(config, parsedConfig);
     }
@@ -55,7 +173,36 @@ public class PySourceConnectorConfig extends AbstractConfig {
                 .define(ENTRY_POINT_CONF, Type.STRING, NO_DEFAULT_VALUE, new NonNullValidator(), Importance.HIGH, ENTRY_POINT_DOC)
                 .define(CONFIGURE_CONF, Type.STRING, "", new NonNullValidator(), Importance.MEDIUM, CONFIGURE_DOC)
                 .define(SETTINGS_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, SETTINGS_DOC)
-                .define(OFFLINE_INSTALL_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, OFFLINE_INSTALL_DOC);
+                .define(OFFLINE_INSTALL_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, OFFLINE_INSTALL_DOC)
+                .define(TRANSFORM_ENTRY_POINT_CONF, Type.STRING, "", new NonNullValidator(), Importance.MEDIUM, TRANSFORM_ENTRY_POINT_DOC)
+                .define(STRUCT_TRANSPORT_CONF, Type.STRING, PyJavaIO.STRUCT_TRANSPORT_DICT,
+                        ConfigDef.ValidString.in(PyJavaIO.STRUCT_TRANSPORT_DICT, PyJavaIO.STRUCT_TRANSPORT_JSON),
+                        Importance.LOW, STRUCT_TRANSPORT_DOC)
+                .define(KEY_SCHEMA_CONF, Type.STRING, "", SCHEMA_DEFINITION_VALIDATOR, Importance.MEDIUM, KEY_SCHEMA_DOC)
+                .define(VALUE_SCHEMA_CONF, Type.STRING, "", SCHEMA_DEFINITION_VALIDATOR, Importance.MEDIUM, VALUE_SCHEMA_DOC)
+                .define(SEPARATE_VALUE_STRUCT_CONF, Type.BOOLEAN, false, Importance.LOW, SEPARATE_VALUE_STRUCT_DOC)
+                .define(ASYNC_STARTUP_CONF, Type.BOOLEAN, false, Importance.MEDIUM, ASYNC_STARTUP_DOC)
+                .define(WARMUP_RECORDS_CONF, Type.STRING, "", WarmupRecords.VALIDATOR, Importance.LOW, WARMUP_RECORDS_DOC)
+                .define(PREFETCH_ENABLED_CONF, Type.BOOLEAN, false, Importance.MEDIUM, PREFETCH_ENABLED_DOC)
+                .define(PREFETCH_MAX_RECORDS_CONF, Type.INT, 10000, ConfigDef.Range.atLeast(1), Importance.LOW, PREFETCH_MAX_RECORDS_DOC)
+                .define(PREFETCH_MAX_BYTES_CONF, Type.LONG, 64L * 1024 * 1024, ConfigDef.Range.atLeast(1), Importance.LOW, PREFETCH_MAX_BYTES_DOC)
+                .define(BATCH_MAX_RECORDS_CONF, Type.INT, 1000, ConfigDef.Range.atLeast(1), Importance.LOW, BATCH_MAX_RECORDS_DOC)
+                .define(BATCH_MAX_BYTES_CONF, Type.LONG, 1024L * 1024, ConfigDef.Range.atLeast(1), Importance.LOW, BATCH_MAX_BYTES_DOC)
+                .define(BATCH_LINGER_MS_CONF, Type.LONG, 0L, ConfigDef.Range.atLeast(0), Importance.MEDIUM, BATCH_LINGER_MS_DOC)
+                .define(SOURCE_PARTITIONS_CONF, Type.STRING, "", SOURCE_PARTITIONS_VALIDATOR, Importance.MEDIUM, SOURCE_PARTITIONS_DOC)
+                .define(PARTITIONS_METHOD_CONF, Type.STRING, "", new NonNullValidator(), Importance.MEDIUM, PARTITIONS_METHOD_DOC)
+                .define(PARTITIONS_POLL_INTERVAL_MS_CONF, Type.LONG, 60000L, ConfigDef.Range.atLeast(1), Importance.LOW,
+                        PARTITIONS_POLL_INTERVAL_MS_DOC)
+                .define(VENV_CACHE_MAX_BYTES_CONF, Type.LONG, 0L, ConfigDef.Range.atLeast(0), Importance.LOW, VENV_CACHE_MAX_BYTES_DOC)
+                .define(SHARED_ENVIRONMENT_CONF, Type.BOOLEAN, false, Importance.LOW, SHARED_ENVIRONMENT_DOC)
+                .define(PRECOMPILE_BYTECODE_CONF, Type.BOOLEAN, true, Importance.LOW, PRECOMPILE_BYTECODE_DOC)
+                .define(PYCACHE_DIR_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, PYCACHE_DIR_DOC)
+                .define(VENV_SNAPSHOT_CONF, Type.STRING, "", new NonNullValidator(), Importance.LOW, VENV_SNAPSHOT_DOC)
+                .define(ENGINE_CONF, Type.STRING, PythonHost.ENGINE_PEMJA,
+                        ConfigDef.ValidString.in(PythonHost.ENGINE_PEMJA, PythonHost.ENGINE_PROCESS, PythonHost.ENGINE_GRAALPY,
+                                PythonHost.ENGINE_STUB),
+                        Importance.MEDIUM, ENGINE_DOC)
+                .define(WORKER_PROCESSES_CONF, Type.INT, 1, ConfigDef.Range.atLeast(1), Importance.MEDIUM, WORKER_PROCESSES_DOC);
     }
 
     public String getKafkaTopic() {
@@ -68,4 +215,39 @@ public class PySourceConnectorConfig extends AbstractConfig {
     public String getConfigureMethod() { return this.getString(CONFIGURE_CONF);}
     public String getPythonSettings() { return this.getString(SETTINGS_CONF);}
     public String getOfflineInstallPath() { return this.getString(OFFLINE_INSTALL_CONF);}
+    public String getTransformEntryPoint() { return this.getString(TRANSFORM_ENTRY_POINT_CONF);}
+    public String getStructTransport() { return this.getString(STRUCT_TRANSPORT_CONF);}
+    public String getKeySchema() { return this.getString(KEY_SCHEMA_CONF);}
+    public String getValueSchema() { return this.getString(VALUE_SCHEMA_CONF);}
+    public boolean getSeparateValueStruct() { return this.getBoolean(SEPARATE_VALUE_STRUCT_CONF);}
+    public boolean getAsyncStartup() { return this.getBoolean(ASYNC_STARTUP_CONF);}
+    public String getWarmupRecords() { return this.getString(WARMUP_RECORDS_CONF);}
+    public boolean getPrefetchEnabled() { return this.getBoolean(PREFETCH_ENABLED_CONF);}
+    public int getPrefetchMaxRecords() { return this.getInt(PREFETCH_MAX_RECORDS_CONF);}
+    public long getPrefetchMaxBytes() { return this.getLong(PREFETCH_MAX_BYTES_CONF);}
+    public int getBatchMaxRecords() { return this.getInt(BATCH_MAX_RECORDS_CONF);}
+    public long getBatchMaxBytes() { return this.getLong(BATCH_MAX_BYTES_CONF);}
+    public long getBatchLingerMs() { return this.getLong(BATCH_LINGER_MS_CONF);}
+    public String getSourcePartitions() { return this.getString(SOURCE_PARTITIONS_CONF);}
+    public String getPartitionsMethod() { return this.getString(PARTITIONS_METHOD_CONF);}
+    public long getPartitionsPollIntervalMs() { return this.getLong(PARTITIONS_POLL_INTERVAL_MS_CONF);}
+    public long getVenvCacheMaxBytes() { return this.getLong(VENV_CACHE_MAX_BYTES_CONF);}
+    public boolean getSharedEnvironment() { return this.getBoolean(SHARED_ENVIRONMENT_CONF);}
+    public boolean getPrecompileBytecode() { return this.getBoolean(PRECOMPILE_BYTECODE_CONF);}
+    public String getPycacheDir() { return this.getString(PYCACHE_DIR_CONF);}
+    public String getVenvSnapshot() { return this.getString(VENV_SNAPSHOT_CONF);}
+    public String getEngine() { return this.getString(ENGINE_CONF);}
+    public int getWorkerProcesses() { return this.getInt(WORKER_PROCESSES_CONF);}
+
+    public EnvironmentOptions getEnvironmentOptions() {
+        return new EnvironmentOptions()
+                .venvCacheMaxBytes(getVenvCacheMaxBytes())
+                .sharedEnvironment(getSharedEnvironment())
+                .precompileBytecode(getPrecompileBytecode())
+                .pycacheDirectory(getPycacheDir())
+                .venvSnapshot(getVenvSnapshot())
+                .engine(getEngine())
+                .workerProcesses(getWorkerProcesses())
+                .init(getConfigureMethod(), getPythonSettings());
+    }
 }
\ No newline at end of file
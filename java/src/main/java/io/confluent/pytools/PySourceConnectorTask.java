@@ -4,12 +4,20 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import lombok.SneakyThrows;
 import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.header.ConnectHeaders;
 import org.apache.kafka.connect.source.SourceRecord;
 import org.apache.kafka.connect.source.SourceTask;
@@ -22,16 +30,49 @@ public class PySourceConnectorTask extends SourceTask {
     static final Logger log = LoggerFactory.getLogger(PySourceConnectorTask.class);
 
     public static final String TASK_ID = "task.id";
+    // JSON list of the work units assigned to the task (when the connector has a partitions method)
+    public static final String TASK_ASSIGNMENT = "task.assignment";
 
     private String topic;
     private int taskId;
     private Map<String, Object> sourcePartition;
+    private SourceOffsets sourceOffsets;
 
     private PythonHost pythonHost;
+    // resolved once when python starts
+    private PythonCallable pollMethod;
+    private PythonCallable transformMethod;
+    // the poll method takes the capacity of the batch as a second argument
+    private boolean pollTakesCapacity;
     private String jsonPrivateSettings;
     private String scriptName;
+    private String transformEntryPoint;
+    private SchemaConverterCache converters;
+    private SchemaConverter declaredKey;
+    private SchemaConverter declaredValue;
+    private boolean separateValueStruct;
 
-    private Map<String, Object> offsets;
+    // updated by the prefetch thread in prefetch mode
+    private volatile Map<String, Object> offsets;
+
+    // how long poll() waits for prefetched records before returning null
+    private static final long PREFETCH_DRAIN_TIMEOUT_MS = 1000;
+    private SourceRecordQueue prefetchQueue;
+    private Thread prefetchThread;
+    private volatile boolean prefetching;
+
+    // generator returned by the python poll method, not exhausted yet
+    private Iterator<?> pendingItems;
+
+    // async startup: completed once the python environment is ready
+    private static final long STARTUP_WAIT_MS = 1000;
+    private volatile CompletableFuture<Void> pythonStartup;
+    // reported through JMX and the logs
+    private PythonTaskStatus pythonStatus;
+
+    private int batchMaxRecords;
+    private long batchMaxBytes;
+    private long batchLingerMs;
 
 
     @Override
@@ -45,19 +86,56 @@ public class PySourceConnectorTask extends SourceTask {
         System.out.println("task.start()");
         PySourceConnectorConfig config = new PySourceConnectorConfig(props);
 
+        scriptName = config.getEntryPoint(); // TODO extract main method name
+        jsonPrivateSettings = config.getPythonSettings();
+        transformEntryPoint = config.getTransformEntryPoint();
+        converters = new SchemaConverterCache(config.getStructTransport().equals(PyJavaIO.STRUCT_TRANSPORT_JSON));
+        declaredKey = declaredSchema(config.getKeySchema());
+        declaredValue = declaredSchema(config.getValueSchema());
+        separateValueStruct = config.getSeparateValueStruct();
+        batchMaxRecords = config.getBatchMaxRecords();
+        batchMaxBytes = config.getBatchMaxBytes();
+        batchLingerMs = config.getBatchLingerMs();
+
+        topic = config.getKafkaTopic();
+        taskId = Integer.parseInt(props.get(TASK_ID));
+        sourcePartition = Collections.singletonMap(TASK_ID, taskId);
+        pythonStatus = PythonTaskStatus.register(props.getOrDefault("name", "python-source"), taskId);
+
+        if (config.getAsyncStartup()) {
+            // the venv build and pip install don't hold the worker: poll() returns nothing until python is ready
+            ExecutorService startupExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "python-startup-task-" + taskId);
+                thread.setDaemon(true);
+                return thread;
+            });
+            pythonStartup = CompletableFuture.runAsync(() -> startPythonAndReport(config, props), startupExecutor);
+            startupExecutor.shutdown();
+            System.out.println("starting the python environment in the background");
+        } else {
+            startPythonAndReport(config, props);
+        }
+    }
+
+    private void startPythonAndReport(PySourceConnectorConfig config, Map<String, String> props) {
+        try {
+            startPython(config, props);
+        } catch (Throwable e) {
+            pythonStatus.failed(e);
+            throw e;
+        }
+        pythonStatus.ready();
+    }
+
+    @SneakyThrows
+    private void startPython(PySourceConnectorConfig config, Map<String, String> props) {
         String pythonExe = config.getPythonPath();
         String scriptsDir = config.getScriptsDir();
         String workingDir = config.getWorkingDir();
         String entryPoint = config.getEntryPoint();
-        scriptName = entryPoint; // TODO extract main method name
         String initMethod = config.getConfigureMethod();
-        jsonPrivateSettings = config.getPythonSettings();
         String localDependenciesDir = config.getOfflineInstallPath();
 
-        topic = config.getKafkaTopic();
-        taskId = Integer.parseInt(props.get(TASK_ID));
-        sourcePartition = Collections.singletonMap(TASK_ID, taskId);
-
         System.out.println("initializing the python environment");
 
         String pythonExecutable = PyUtils.defaultPythonExecutablePath().toString();
@@ -72,33 +150,195 @@ public class PySourceConnectorTask extends SourceTask {
         }
         System.out.println("working directory: " + workingDirectory);
 
-        pythonHost = new PythonHost(pythonExecutable, Paths.get(scriptsDir).toFile(), entryPoint, workingDirectory, localDependenciesDir);
+        pythonHost = new PythonHost(pythonExecutable, Paths.get(scriptsDir).toFile(), entryPoint, workingDirectory,
+                localDependenciesDir, config.getEnvironmentOptions());
+        pollMethod = pythonHost.entryPoint();
+        pollTakesCapacity = pythonHost.entryPointParameters() >= 2;
+        if (!transformEntryPoint.equals("")) {
+            pythonHost.addEntryPoint(transformEntryPoint);
+            transformMethod = pythonHost.namedEntryPoint(transformEntryPoint);
+        }
 
-        offsets = context.offsetStorageReader().offset(sourcePartition);
-        if (offsets == null) {
-            offsets = new HashMap<>();
+        // the assigned work units are also source partitions whose offsets are restored
+        String assignmentJson = props.get(TASK_ASSIGNMENT);
+        List<Map<String, Object>> knownPartitions = SourceOffsets.parsePartitions(config.getSourcePartitions());
+        if (assignmentJson != null) {
+            knownPartitions.addAll(SourceOffsets.parsePartitions(assignmentJson));
         }
 
+        sourceOffsets = new SourceOffsets(sourcePartition);
+        sourceOffsets.load(context.offsetStorageReader(), knownPartitions);
+        offsets = sourceOffsets.toPython();
+
         // call a configure() function in python?
         if (!initMethod.equals("")) {
-            pythonHost.callPythonMethod(initMethod, jsonPrivateSettings, offsets);
+            if (assignmentJson != null) {
+                pythonHost.method(initMethod).broadcast(jsonPrivateSettings, offsets,
+                        PySourceConnector.workUnitsFromJson(assignmentJson));
+            } else {
+                pythonHost.method(initMethod).broadcast(jsonPrivateSettings, offsets);
+            }
             System.out.println("calling the init method: " + initMethod);
         }
+
+        WarmupRecords.run("conversion and batch transform", WarmupRecords.load(config.getWarmupRecords()), this::warmup);
+
+        if (config.getPrefetchEnabled()) {
+            startPrefetching(config.getPrefetchMaxRecords(), config.getPrefetchMaxBytes());
+        }
+    }
+
+    /**
+     * Converts sample poll results and runs them through the batch transform, the records are dropped.
+     * The poll method isn't called (it would consume data) and the offsets aren't updated.
+     */
+    private void warmup(List<Object> samples) {
+        final ConnectHeaders headers = new ConnectHeaders();
+        final List<SourceRecord> records = new ArrayList<>();
+        for (Object sample: samples) {
+            if (!(sample instanceof HashMap)) {
+                throw new IllegalArgumentException("A warm-up record must be a JSON object, got: " + sample);
+            }
+            HashMap<String, Object> item = (HashMap<String, Object>) sample;
+            PythonPollResult pyResult = new PythonPollResult((HashMap) item, scriptName, declaredKey, declaredValue, separateValueStruct);
+            Map<String, Object> partition = sourceOffsets.partitionOf(item.get(PythonPollResult.SOURCE_PARTITION));
+            Map<String, Object> offset = Collections.singletonMap(SourceOffsets.LATEST, item.get(PythonPollResult.OFFSET));
+            records.add(pyResult.toSourceRecord(partition, offset, topic, headers));
+        }
+        if (!transformEntryPoint.equals("")) {
+            transformBatch(records);
+        }
+    }
+
+    // the declared schemas are always filled from dicts, whatever the struct transport of the batch transform
+    private static SchemaConverter declaredSchema(String definition) {
+        if (definition.equals("")) {
+            return null;
+        }
+        return SchemaConverter.build(SchemaDefinition.parse(definition), false);
     }
 
     @Override
     public List<SourceRecord> poll() throws InterruptedException {
         System.out.println("task.poll()");
+        if (!awaitPython()) {
+            return null;
+        }
+        if (prefetchQueue != null) {
+            return prefetchQueue.drain(PREFETCH_DRAIN_TIMEOUT_MS);
+        }
+        return pollPython();
+    }
 
-        Object uncastResults = pythonHost.callEntryPoint(offsets);
-        if (uncastResults == null) {
-            System.out.println("null returned by python, message(s) will be dropped");
+    /**
+     * Async startup: waits a little for the python environment.
+     * @return false if it's still being built
+     */
+    private boolean awaitPython() throws InterruptedException {
+        if (pythonStartup == null || pythonStartup.isDone() && !pythonStartup.isCompletedExceptionally()) {
+            return true;
+        }
+        try {
+            pythonStartup.get(STARTUP_WAIT_MS, TimeUnit.MILLISECONDS);
+            System.out.println("the python environment is ready");
+            return true;
+        } catch (TimeoutException e) {
+            System.out.println("waiting for the python environment");
+            return false;
+        } catch (ExecutionException e) {
+            throw new ConnectException("The python environment of the task could not be started", e.getCause());
+        }
+    }
+
+    /**
+     * @return true once the python environment is built and the init method has been called (see PythonTaskStatus)
+     */
+    public boolean isPythonReady() {
+        return pythonStatus != null && pythonStatus.isReady();
+    }
+
+    /**
+     * Prefetch mode: a dedicated thread keeps calling the python poll method and queues the records,
+     * so that python fetches the next records while the previous ones are being produced.
+     * The thread blocks when the queue is full (backpressure).
+     */
+    private void startPrefetching(int maxRecords, long maxBytes) {
+        prefetchQueue = new SourceRecordQueue(maxRecords, maxBytes);
+        prefetching = true;
+        prefetchThread = new Thread(() -> {
+            try {
+                while (prefetching) {
+                    List<SourceRecord> records = pollPython();
+                    if (records != null && !records.isEmpty()) {
+                        prefetchQueue.put(records);
+                    }
+                }
+            } catch (InterruptedException e) {
+                System.out.println("prefetch thread interrupted");
+            } catch (Throwable e) {
+                System.out.println("prefetch thread failed: " + e);
+                prefetchQueue.fail(e);
+            } finally {
+                // the task is stopping: stop() may have left the interpreter to this thread
+                if (!prefetching) {
+                    closePython();
+                }
+            }
+        }, "python-prefetch-task-" + taskId);
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+        System.out.println("prefetching up to " + maxRecords + " record(s) / " + maxBytes + " bytes");
+    }
+
+    private List<SourceRecord> pollPython() {
+        List<SourceRecord> records = fetchBatch();
+        if (records == null) {
             return null;
         }
-        System.out.println("returned by python: " + uncastResults.toString());
+        if (!transformEntryPoint.equals("")) {
+            return transformBatch(records);
+        }
+        System.out.println("java poll() produced " + records.size() + " record(s)");
+        return records;
+    }
+
+    /**
+     * Calls the python poll method until batch.max.records/batch.max.bytes is reached, batch.linger.ms has elapsed
+     * (by default, a single call) or python returns nothing. If the poll method takes a second argument, it receives
+     * the remaining capacity of the batch: {'max_records': ..., 'max_bytes': ...}
+     */
+    private List<SourceRecord> fetchBatch() {
+        long deadline = System.currentTimeMillis() + batchLingerMs;
+        List<SourceRecord> batch = new ArrayList<>();
+        long batchBytes = 0;
+        while (true) {
+            int maxRecords = batchMaxRecords - batch.size();
+            long maxBytes = batchMaxBytes - batchBytes;
+            List<SourceRecord> records;
+            if (pollTakesCapacity) {
+                HashMap<String, Object> capacity = new HashMap<>();
+                capacity.put("max_records", maxRecords);
+                capacity.put("max_bytes", maxBytes);
+                records = fetchRecords(maxRecords, maxBytes, offsets, capacity);
+            } else {
+                records = fetchRecords(maxRecords, maxBytes, offsets);
+            }
+            // nothing to fetch right now: the next poll() calls python again
+            if (records == null || records.isEmpty()) {
+                break;
+            }
+            batch.addAll(records);
+            batchBytes += SourceRecordQueue.estimateSize(records);
+            if (batch.size() >= batchMaxRecords || batchBytes >= batchMaxBytes || System.currentTimeMillis() >= deadline) {
+                break;
+            }
+        }
+        return batch.isEmpty() ? null : batch;
+    }
 
-        // we allow to receive a list or just a single element
-        ArrayList<HashMap<String, HashMap<String, Object>>> pyResults = new ArrayList<>();;
+    // we allow to receive a list or just a single element
+    private static ArrayList<HashMap<String, HashMap<String, Object>>> castPollResults(Object uncastResults) {
+        ArrayList<HashMap<String, HashMap<String, Object>>> pyResults = new ArrayList<>();
         if (uncastResults instanceof ArrayList) {
             pyResults = (ArrayList<HashMap<String, HashMap<String, Object>>>)uncastResults;
         } else if (uncastResults instanceof HashMap) {
@@ -107,27 +347,153 @@ public class PySourceConnectorTask extends SourceTask {
             System.out.println("Invalid data type returned by python, message(s) will be dropped");
             return null; // TODO check if we need to throw an exception instead
         }
+        return pyResults;
+    }
 
-        // refresh the offsets from the last 'offset' key of the py results
-        offsets = new HashMap<>();
-        offsets.put("latest", PythonPollResult.getLatestOffset(pyResults));
+    @SneakyThrows
+    private void closePendingItems() {
+        if (pendingItems instanceof AutoCloseable) {
+            ((AutoCloseable) pendingItems).close();
+        }
+        pendingItems = null;
+    }
 
+    /**
+     * Calls the python poll method, or pulls the next items of the generator returned by a previous call.
+     * @param maxItems: maximum number of items pulled from a generator
+     * @param maxBytes: the items are pulled from a generator until their estimated size reaches maxBytes
+     */
+    private List<SourceRecord> fetchRecords(int maxItems, long maxBytes, Object... pollArgs) {
         final ConnectHeaders headers = new ConnectHeaders();
         headers.addLong(TASK_ID, taskId);
-
         final List<SourceRecord> records = new ArrayList<>();
-        for (HashMap<String, HashMap<String, Object>> rawResult: pyResults) {
-            PythonPollResult pyResult = new PythonPollResult(rawResult, scriptName);
-            records.add(pyResult.toSourceRecord(sourcePartition, offsets, topic, headers));
+
+        if (pendingItems == null) {
+            Object uncastResults = pollMethod.call(pollArgs);
+            if (uncastResults == null) {
+                System.out.println("null returned by python, message(s) will be dropped");
+                return null;
+            }
+            if (uncastResults instanceof Iterator) {
+                // python generator/iterator: its items are pulled by chunks, across poll() calls
+                pendingItems = (Iterator<?>) uncastResults;
+            } else {
+                System.out.println("returned by python: " + uncastResults.toString());
+                ArrayList<HashMap<String, HashMap<String, Object>>> pyResults = castPollResults(uncastResults);
+                if (pyResults == null) {
+                    return null;
+                }
+                for (HashMap<String, HashMap<String, Object>> rawResult: pyResults) {
+                    records.add(toSourceRecord(rawResult, headers));
+                }
+            }
         }
-        System.out.println("java poll() produced " + records.size() + " record(s)");
+        if (pendingItems != null) {
+            long bytes = 0;
+            while (records.size() < maxItems && bytes < maxBytes && pendingItems.hasNext()) {
+                Object item = pendingItems.next();
+                if (item instanceof HashMap) {
+                    SourceRecord record = toSourceRecord((HashMap<String, HashMap<String, Object>>) item, headers);
+                    records.add(record);
+                    bytes += SourceRecordQueue.estimateSize(record.key()) + SourceRecordQueue.estimateSize(record.value());
+                } else {
+                    System.out.println("Invalid data type yielded by python, message will be dropped");
+                }
+            }
+            if (!pendingItems.hasNext()) {
+                closePendingItems();
+            }
+            if (records.isEmpty()) {
+                return null;
+            }
+        }
+
+        // refresh the offsets passed to the next python poll
+        offsets = sourceOffsets.toPython();
         return records;
     }
 
+    // each record has its own source partition and offset
+    private SourceRecord toSourceRecord(HashMap<String, HashMap<String, Object>> rawResult, ConnectHeaders headers) {
+        PythonPollResult pyResult = new PythonPollResult(rawResult, scriptName, declaredKey, declaredValue, separateValueStruct);
+        Map<String, Object> item = (Map) rawResult;
+        Map<String, Object> partition = sourceOffsets.partitionOf(item.get(PythonPollResult.SOURCE_PARTITION));
+        Map<String, Object> offset = sourceOffsets.update(partition, item.get(PythonPollResult.OFFSET));
+        return pyResult.toSourceRecord(partition, offset, topic, headers);
+    }
+
+    /**
+     * Calls the python batch transform once with the whole poll() result.
+     * The transform returns a list with one item per polled record: the transformed record,
+     * or None to drop it (returning None instead of a list drops the whole batch).
+     */
+    private List<SourceRecord> transformBatch(List<SourceRecord> records) {
+        ArrayList<Object> batch = new ArrayList<>(records.size());
+        for (SourceRecord record: records) {
+            batch.add(PyJavaIO.recordToPython(record, converters));
+        }
+
+        Object uncastResults = transformMethod.call(batch);
+        if (uncastResults == null) {
+            System.out.println("null returned by the python transform, message(s) will be dropped");
+            return null;
+        }
+        if (!(uncastResults instanceof ArrayList) || ((ArrayList<?>) uncastResults).size() != records.size()) {
+            System.out.println("The python transform must return one item per record, message(s) left untransformed");
+            return records;
+        }
+
+        ArrayList<?> pyResults = (ArrayList<?>) uncastResults;
+        final List<SourceRecord> transformed = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            if (pyResults.get(i) != null) {
+                transformed.add(PyJavaIO.recordFromPython(pyResults.get(i), records.get(i), converters));
+            }
+        }
+        System.out.println("python transform kept " + transformed.size() + " out of " + records.size() + " record(s)");
+        return transformed;
+    }
+
     @Override
     public void stop() {
         System.out.println("task.stop()");
-        // TODO create config + call a python method
+        if (pythonStartup != null && !pythonStartup.isDone()) {
+            // the python environment is released once it's built, without holding the worker
+            System.out.println("the python environment will be stopped once started");
+            pythonStartup.whenComplete((ignored, e) -> stopPython());
+            return;
+        }
+        stopPython();
+    }
+
+    private void stopPython() {
+        if (prefetchThread != null) {
+            prefetching = false;
+            prefetchThread.interrupt();
+            try {
+                prefetchThread.join(PREFETCH_DRAIN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (prefetchThread.isAlive()) {
+                // a prefetch thread still in a python call keeps the interpreter: it's closed when the thread exits
+                System.out.println("the python environment will be stopped once the prefetch thread returns");
+                return;
+            }
+        }
+        closePython();
+    }
+
+    // TODO create config + call a python method
+    private synchronized void closePython() {
+        if (pythonHost != null) {
+            closePendingItems();
+            pythonHost.close();
+            pythonHost = null;
+        }
+        if (pythonStatus != null) {
+            pythonStatus.stopped();
+        }
     }
 
     public Map<String, Object> getOffsets() {
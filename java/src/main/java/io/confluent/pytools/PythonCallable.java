@@ -0,0 +1,20 @@
+package io.confluent.pytools;
+
+/**
+ * A python function resolved once (see PythonEngine.bind), called without resolving its name again.
+ * The handle is valid until the engine is closed.
+ */
+public interface PythonCallable {
+
+    Object call(Object... args);
+
+    /**
+     * Calls the function in every interpreter of the engine (eg. an init method when there are several
+     * python processes), and returns the result of one of them.
+     */
+    default Object broadcast(Object... args) {
+        return call(args);
+    }
+
+    String getFunctionName();
+}
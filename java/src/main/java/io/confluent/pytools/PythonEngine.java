@@ -0,0 +1,53 @@
+package io.confluent.pytools;
+
+/**
+ * Runs the python code of a PythonHost, selected with python.engine (see PythonHost.ENGINE_*):
+ * an interpreter embedded in the JVM (PythonEnvironment, the default), python worker processes (ProcessWorkerPool),
+ * GraalPy (GraalPyEngine) or java functions (StubEngine).
+ */
+public interface PythonEngine extends AutoCloseable {
+
+    void executePythonStatement(String pythonStatement);
+
+    /**
+     * @param methodName: a function of the python namespace, eg. "alias.function"
+     */
+    Object callPythonMethod(String methodName, Object... args);
+
+    /**
+     * Resolves a function of an imported module once (see PythonCallable).
+     *
+     * @param moduleAlias: the name of the module (see executePythonStatement("import ... as alias"))
+     * @param functionName: a function of the module
+     */
+    PythonCallable bind(String moduleAlias, String functionName);
+
+    /**
+     * @return true if the engine can start other interpreters (see newInterpreter): the worker processes can't,
+     * they already are separate interpreters
+     */
+    default boolean supportsNewInterpreter() {
+        return true;
+    }
+
+    /**
+     * Starts another engine on top of the same (already built) virtual environment.
+     * Only called if supportsNewInterpreter().
+     *
+     * @param subInterpreter: if the engine supports it, a sub-interpreter (with its own GIL from python 3.12)
+     *                      instead of a thread of the main interpreter
+     */
+    PythonEngine newInterpreter(boolean subInterpreter);
+
+    /**
+     * @return the counters of the function calls made through the engine
+     */
+    EngineStats getStats();
+
+    String getPythonExePath();
+
+    String getVirtualEnvironmentPath();
+
+    @Override
+    void close();
+}
@@ -1,38 +1,190 @@
 package io.confluent.pytools;
 
 import lombok.SneakyThrows;
+import pemja.core.PythonException;
 import pemja.core.PythonInterpreter;
 import pemja.core.PythonInterpreterConfig;
+import pemja.core.object.PyIterator;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Supplier;
 
 import static io.confluent.pytools.OperatingSystemProcess.executeWithRetries;
 
-public class PythonEnvironment {
+public class PythonEnvironment implements PythonEngine {
     private final PythonInterpreter interpreter;
+    private boolean closed = false;
+    // number of functions resolved by bind(), which names their globals
+    private int boundFunctions = 0;
+    private final EngineStats stats = new EngineStats();
 
     private final String pythonExePath;
     private final String virtualEnvironmentPath;
+    private final String[] paths;
+    private final String pycacheDirectory;
+
     public PythonEnvironment(String pythonExecutablePath, String[] paths, String venvPath) {
+        this(pythonExecutablePath, paths, venvPath, PythonInterpreterConfig.ExecType.MULTI_THREAD);
+    }
+
+    public PythonEnvironment(String pythonExecutablePath, String[] paths, String venvPath,
+                             PythonInterpreterConfig.ExecType execType) {
+        this(pythonExecutablePath, paths, venvPath, execType, null);
+    }
+
+    /**
+     * @param pycacheDirectory: optional, where the interpreter reads and writes the bytecode caches (sys.pycache_prefix)
+     */
+    public PythonEnvironment(String pythonExecutablePath, String[] paths, String venvPath,
+                             PythonInterpreterConfig.ExecType execType, String pycacheDirectory) {
         PythonInterpreterConfig config = PythonInterpreterConfig.newBuilder()
                 .setPythonExec(pythonExecutablePath)
-                .setExcType(PythonInterpreterConfig.ExecType.MULTI_THREAD)
+                .setExcType(execType)
                 .addPythonPaths(paths)
                 .build();
 
         pythonExePath = pythonExecutablePath;
         virtualEnvironmentPath = venvPath;
+        this.paths = paths;
+        this.pycacheDirectory = pycacheDirectory;
 
         interpreter = new PythonInterpreter(config);
+        if (pycacheDirectory != null) {
+            interpreter.set("_pycache_prefix", pycacheDirectory);
+            interpreter.exec("import sys; sys.pycache_prefix = _pycache_prefix; del _pycache_prefix");
+        }
     }
-    public void executePythonStatement(String pythonStatement) {
-        interpreter.exec(pythonStatement);
+
+    public PythonEnvironment(VirtualEnvironment venv) {
+        this(venv.getPythonExecutable(), venv.getPaths(), venv.getPath(), PythonInterpreterConfig.ExecType.MULTI_THREAD,
+                venv.getPycacheDirectory());
     }
 
-    public Object callPythonMethod(String methodName, Object... args) {
-        return interpreter.invoke(methodName, args);
+    /**
+     * Starts another interpreter on top of the same (already built) virtual environment.
+     */
+    @Override
+    public PythonEnvironment newInterpreter(boolean subInterpreter) {
+        PythonInterpreterConfig.ExecType execType = subInterpreter ? PythonInterpreterConfig.ExecType.SUB_INTERPRETER
+                : PythonInterpreterConfig.ExecType.MULTI_THREAD;
+        return new PythonEnvironment(pythonExePath, paths, virtualEnvironmentPath, execType, pycacheDirectory);
+    }
+
+    // the calls are serialized: the interpreter can be shared by several tasks/transforms, and closed by any thread
+    @Override
+    public synchronized void executePythonStatement(String pythonStatement) {
+        checkNotClosed();
+        python(() -> {
+            interpreter.exec(pythonStatement);
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized Object callPythonMethod(String methodName, Object... args) {
+        checkNotClosed();
+        return stats.record(() -> wrapResult(python(() -> interpreter.invoke(methodName, args))));
+    }
+
+    /**
+     * Resolves the function once: it's assigned to a global of its own, which the returned handle calls directly
+     * (a dict lookup), without resolving the module and its attribute in python at each call.
+     */
+    @Override
+    public synchronized PythonCallable bind(String moduleAlias, String functionName) {
+        checkNotClosed();
+        String boundName = "_pytools_bound_" + boundFunctions++;
+        python(() -> {
+            interpreter.exec(boundName + " = getattr(" + moduleAlias + ", '" + functionName + "')");
+            return null;
+        });
+        return new PythonCallable() {
+            @Override
+            public Object call(Object... args) {
+                return callPythonMethod(boundName, args);
+            }
+
+            @Override
+            public String getFunctionName() {
+                return functionName;
+            }
+        };
+    }
+
+    // the python errors are reported with the engine-neutral exception
+    // (pemja throws its checked PythonException from native code, without declaring it)
+    private static <T> T python(Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (Exception e) {
+            if (e instanceof PythonException) {
+                throw new PythonExecutionException(e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    private Object wrapResult(Object result) {
+        if (result instanceof PyIterator) {
+            return new SynchronizedIterator((PyIterator) result);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            interpreter.close();
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("The python environment " + virtualEnvironmentPath + " is closed.");
+        }
+    }
+
+    /**
+     * Python generators/iterators returned to java call the interpreter on each next():
+     * the calls are serialized with the other calls to the interpreter.
+     */
+    private class SynchronizedIterator implements Iterator<Object>, AutoCloseable {
+        private final PyIterator iterator;
+
+        private SynchronizedIterator(PyIterator iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (PythonEnvironment.this) {
+                checkNotClosed();
+                return python(iterator::hasNext);
+            }
+        }
+
+        @Override
+        public Object next() {
+            synchronized (PythonEnvironment.this) {
+                checkNotClosed();
+                return python(iterator::next);
+            }
+        }
+
+        @SneakyThrows
+        @Override
+        public void close() {
+            synchronized (PythonEnvironment.this) {
+                if (!closed) {
+                    iterator.close();
+                }
+            }
+        }
     }
 
     /**
@@ -44,7 +196,7 @@ public class PythonEnvironment {
      *                                   if venvName = "venv1" and workingDirectory = "/app/",
      *                                   the python environment will be created in "/app/venv1/"
      * @param pythonExecutablePath       : optional, the python exe to used (default = default python3 exe of the system)
-     * @param venvName                   : optional, the virtual environment name to use (default = "venv-<uuid>")
+     * @param venvName                   : optional, the virtual environment name to use (default = "venv-<hash>")
      * @param localDependenciesDirectory : optional, directory with packages for offline installation
      * @param additionalPath             : optional, directory to be added to the path (used for providing
      *                                   the user scripts directory)
@@ -53,6 +205,47 @@ public class PythonEnvironment {
     public static PythonEnvironment build(String[] pipRequirements, Path workingDirectory,
                                           Path pythonExecutablePath, String venvName, String localDependenciesDirectory,
                                           String additionalPath) {
+        return build(pipRequirements, workingDirectory, pythonExecutablePath, venvName, localDependenciesDirectory,
+                additionalPath, 0);
+    }
+
+    /**
+     * Same as above, the venv name defaulting to a content-addressed "venv-<hash>" (see VenvCache):
+     * a ready venv built for the same python executable, requirements and offline directory is reused as is.
+     *
+     * @param venvCacheMaxBytes          : optional (0 = no limit), size budget of the ready venvs of the working directory,
+     *                                   the least recently used ones are deleted when it's exceeded
+     */
+    public static PythonEnvironment build(String[] pipRequirements, Path workingDirectory,
+                                          Path pythonExecutablePath, String venvName, String localDependenciesDirectory,
+                                          String additionalPath, long venvCacheMaxBytes) {
+        return build(pipRequirements, workingDirectory, pythonExecutablePath, venvName, localDependenciesDirectory,
+                additionalPath, new EnvironmentOptions().venvCacheMaxBytes(venvCacheMaxBytes));
+    }
+
+    /**
+     * Same as above, with the venv cache and bytecode settings of the options.
+     *
+     * When precompileBytecode is set, the site-packages of a new venv (once, before it's marked ready) are compiled
+     * to checked-hash pycs, which stay valid when the files are copied: the interpreters don't compile the imported
+     * modules from source. The additional path (the scripts, at each build since they can change) is only compiled
+     * when there's a pycache directory: nothing is written next to the scripts.
+     */
+    public static PythonEnvironment build(String[] pipRequirements, Path workingDirectory,
+                                          Path pythonExecutablePath, String venvName, String localDependenciesDirectory,
+                                          String additionalPath, EnvironmentOptions options) {
+        return new PythonEnvironment(buildVirtualEnvironment(pipRequirements, workingDirectory, pythonExecutablePath,
+                venvName, localDependenciesDirectory, additionalPath, options));
+    }
+
+    /**
+     * Builds (or reuses) the virtual environment, without starting an interpreter (see build() for the parameters).
+     */
+    @SneakyThrows
+    public static VirtualEnvironment buildVirtualEnvironment(String[] pipRequirements, Path workingDirectory,
+                                                             Path pythonExecutablePath, String venvName,
+                                                             String localDependenciesDirectory, String additionalPath,
+                                                             EnvironmentOptions options) {
         HashSet<String> paths = new HashSet<>();
 
         if (additionalPath != null) {
@@ -61,40 +254,114 @@ public class PythonEnvironment {
 
         Path finalPythonExecutablePath = pythonExecutablePath;
         if (finalPythonExecutablePath == null) {
-            finalPythonExecutablePath = PyUtils.defaultPythonExecutablePath();
+            finalPythonExecutablePath = PythonToolchain.defaultExecutable();
         }
+        PythonToolchain toolchain = PythonToolchain.of(finalPythonExecutablePath.toString());
 
         // create venv
         String finalVenvName = venvName;
         if (finalVenvName == null) {
-            finalVenvName = "venv-" + UUID.randomUUID();
+            finalVenvName = VenvCache.venvName(finalPythonExecutablePath.toString(),
+                    toolchain.getVersion(), pipRequirements, localDependenciesDirectory);
         }
         Path venvPath = Paths.get(workingDirectory.toString(), finalVenvName);
 
-        Path defaultSitePackages = Paths.get(PyUtils.getSitePackages(finalPythonExecutablePath.toString()));
-        paths.add(defaultSitePackages.toString());
-        paths.add(defaultSitePackages.toString().replaceFirst("/lib/", "/lib64/"));
+        paths.addAll(Arrays.asList(toolchain.getSitePackagesPaths()));
+
+        // one builder per venv, the tasks starting at the same time wait for it and reuse the venv
+        Path venvPythonExecutablePath;
+        Closeable buildLock = VenvCache.lockForBuild(venvPath);
+        try {
+            if (VenvCache.isReady(venvPath)) {
+                System.out.println("reusing the virtual environment " + venvPath);
+                venvPythonExecutablePath = Paths.get(venvPath.toString(), "bin", "python");
+                VenvCache.touch(venvPath);
+            } else {
+                boolean fromSnapshot = canRestoreSnapshot(options.getVenvSnapshot(), pipRequirements, toolchain);
+                // pip isn't needed in a venv restored from a snapshot
+                venvPythonExecutablePath = createVirtualEnvironment(finalPythonExecutablePath, venvPath, !fromSnapshot);
+                // the venv may replace an evicted one at the same path
+                PythonToolchain.invalidate(venvPythonExecutablePath.toString());
+                if (fromSnapshot) {
+                    VenvSnapshot.restore(Paths.get(options.getVenvSnapshot()),
+                            Paths.get(PythonToolchain.of(venvPythonExecutablePath.toString()).getPurelib()));
+                } else {
+                    // install pip requirements
+                    pipInstallRequirements(venvPythonExecutablePath.toString(), pipRequirements, localDependenciesDirectory);
+                }
+                if (options.isPrecompileBytecode()) {
+                    compileBytecode(venvPythonExecutablePath.toString(),
+                            PythonToolchain.of(venvPythonExecutablePath.toString()).getPurelib(), options.getPycacheDirectory());
+                }
+                VenvCache.markReady(venvPath, pipRequirements);
+            }
+            // released when the python host closes (see PythonHost.close)
+            VenvCache.acquire(venvPath);
+        } finally {
+            buildLock.close();
+        }
+        paths.addAll(Arrays.asList(PythonToolchain.of(venvPythonExecutablePath.toString()).getSitePackagesPaths()));
+
+        if (options.isPrecompileBytecode() && additionalPath != null && options.getPycacheDirectory() != null) {
+            compileBytecode(venvPythonExecutablePath.toString(), additionalPath, options.getPycacheDirectory());
+        }
 
-        Path venvPythonExecutablePath = createVirtualEnvironment(finalPythonExecutablePath, venvPath);
-        Path venvSitePackages = Paths.get(PyUtils.getSitePackages(venvPythonExecutablePath.toString()));
-        paths.add(venvSitePackages.toString());
-        paths.add(venvSitePackages.toString().replaceFirst("/lib/", "/lib64/"));
+        VenvCache.evict(workingDirectory, options.getVenvCacheMaxBytes());
 
-        // install pip requirements
-        pipInstallRequirements(venvPythonExecutablePath.toString(), pipRequirements, localDependenciesDirectory);
+        return new VirtualEnvironment(venvPythonExecutablePath.toString(), paths.toArray(String[]::new), venvPath.toString(),
+                options.getPycacheDirectory());
+    }
 
-        // returns new PythonEnvironment with the proper paths
-        return new PythonEnvironment(venvPythonExecutablePath.toString(), paths.toArray(String[]::new), venvPath.toString());
+    /**
+     * Compiles the python files of a directory to checked-hash pycs (valid as long as the sources don't change,
+     * whatever their modification time). Best effort: the interpreter compiles what's missing on import.
+     *
+     * @param pycacheDirectory: optional, where to write the pycs (instead of __pycache__ next to the sources,
+     *                        eg. when they're read-only)
+     * @return true if everything was compiled
+     */
+    static boolean compileBytecode(String pythonExecutable, String directory, String pycacheDirectory) {
+        HashMap<String, String> envVars = new HashMap<>();
+        if (pycacheDirectory != null) {
+            envVars.put("PYTHONPYCACHEPREFIX", pycacheDirectory);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            OperatingSystemProcess.execute(new String[]{pythonExecutable, "-m", "compileall", "-q", "-j", "0",
+                    "--invalidation-mode", "checked-hash", directory}, envVars);
+        } catch (Exception e) {
+            System.out.println("could not precompile " + directory + ": " + e.getMessage());
+            return false;
+        }
+        System.out.println("precompiled " + directory + " in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
     }
 
     @SneakyThrows
-    private static Path createVirtualEnvironment(Path pythonExecutable, Path venvPath) {
-        OperatingSystemProcess.execute(new String[]{pythonExecutable.toString(), "-m", "venv", venvPath.toString()});
+    private static Path createVirtualEnvironment(Path pythonExecutable, Path venvPath, boolean withPip) {
+        if (withPip) {
+            OperatingSystemProcess.execute(new String[]{pythonExecutable.toString(), "-m", "venv", venvPath.toString()});
+        } else {
+            OperatingSystemProcess.execute(new String[]{pythonExecutable.toString(), "-m", "venv", "--without-pip", venvPath.toString()});
+        }
         return Paths.get(venvPath.toString(), "bin", "python");
     }
 
+    // a snapshot built for other requirements or another python is ignored, the packages are installed by pip
+    private static boolean canRestoreSnapshot(String snapshot, String[] pipRequirements, PythonToolchain toolchain) throws IOException {
+        if (snapshot == null) {
+            return false;
+        }
+        String incompatibility = VenvSnapshot.checkCompatible(Paths.get(snapshot), pipRequirements, toolchain);
+        if (incompatibility != null) {
+            System.out.println("ignoring the virtual environment snapshot " + snapshot + ": " + incompatibility);
+            return false;
+        }
+        return true;
+    }
+
     private static void pipInstallRequirements(String pythonExecutable, String[] requirements, String localDependenciesDirectory) {
-        String sitePackagesPath = PyUtils.getSitePackages(pythonExecutable);
+        String sitePackagesPath = PythonToolchain.of(pythonExecutable).getPurelib();
         HashMap<String, String> envVars = new HashMap<>();
         envVars.put("PYTHONPATH", sitePackagesPath);
 
@@ -107,10 +374,17 @@ public class PythonEnvironment {
         executeWithRetries(pipInstallCommand.toArray(String[]::new), envVars, 3);
     }
 
+    @Override
+    public EngineStats getStats() {
+        return stats;
+    }
+
+    @Override
     public String getPythonExePath() {
         return pythonExePath;
     }
 
+    @Override
     public String getVirtualEnvironmentPath() {
         return virtualEnvironmentPath;
     }
@@ -0,0 +1,16 @@
+package io.confluent.pytools;
+
+/**
+ * An error raised by the python code (exception, syntax error, missing module), whatever the engine running it:
+ * the message holds the python error (and the traceback when the engine provides it).
+ */
+public class PythonExecutionException extends RuntimeException {
+
+    public PythonExecutionException(String message) {
+        super(message);
+    }
+
+    public PythonExecutionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
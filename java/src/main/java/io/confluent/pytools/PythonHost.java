@@ -1,6 +1,7 @@
 package io.confluent.pytools;
 
 import lombok.SneakyThrows;
+import org.apache.kafka.common.config.ConfigException;
 
 import java.io.File;
 import java.io.FilenameFilter;
@@ -12,21 +13,68 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static java.nio.file.Files.readAllLines;
 
 public class PythonHost {
 
+    // the python.engine values
+    public static final String ENGINE_PEMJA = "pemja";
+    public static final String ENGINE_PROCESS = "process";
+    public static final String ENGINE_STUB = "stub";
+    public static final String ENGINE_GRAALPY = "graalpy";
+
+    // environments shared by the tasks and transforms with the same setup
+    static final SharedEnvironments<PythonEngine> SHARED = new SharedEnvironments<>();
+    // the call coalescers of the shared environments, with the engine they call
+    private static final ConcurrentHashMap<String, SharedCoalescer> SHARED_COALESCERS = new ConcurrentHashMap<>();
+
+    private static class SharedCoalescer {
+        private final PythonEngine engine;
+        private final CallCoalescer coalescer;
+
+        private SharedCoalescer(PythonEngine engine, CallCoalescer coalescer) {
+            this.engine = engine;
+            this.coalescer = coalescer;
+        }
+    }
+
     private final String PEMJA_PREFIX = "pemja";
     private final String PEMJA_REQ_VERSION = "pemja";
 
-    private String importStatement;
+    private final String importStatement;
     private final String guestLibraryAlias;
-    private String callableMethod;
+    private final String callableMethod;
 
-    private final PythonEnvironment pythonEnv;
+    private final PythonEngine pythonEnv;
+    // null if the environment is not shared
+    private final String sharedEnvironmentKey;
+    private final File scriptsDirectory;
+    // the functions are resolved once, when they're added or first called
+    private final PythonCallable entryPoint;
+    private final int entryPointParameters;
+    private final HashMap<String, PythonCallable> namedEntryPoints = new HashMap<>();
+    private final ConcurrentHashMap<String, PythonCallable> methods = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CallCoalescer> coalescers = new ConcurrentHashMap<>();
+    // runs the calls of the async API: the executor set by the application, or a python thread started on first use
+    private final int asyncQueueCapacity;
+    private Executor asyncExecutor;
+    private ExecutorService pythonThread;
+    private boolean closed = false;
 
     // TODO move to a static build() pattern?
     public PythonHost(String pythonExecutable, File scriptsDirectory, String entryPoint, String workingDirectory) throws IOException {
@@ -34,9 +82,31 @@ public class PythonHost {
     }
 
     public PythonHost(String pythonExecutable, File scriptsDirectory, String entryPoint, String workingDirectory, String localDependenciesDirectory) throws IOException {
+        this(pythonExecutable, scriptsDirectory, entryPoint, workingDirectory, localDependenciesDirectory, 0);
+    }
+
+    public PythonHost(String pythonExecutable, File scriptsDirectory, String entryPoint, String workingDirectory,
+                      String localDependenciesDirectory, long venvCacheMaxBytes) throws IOException {
+        this(pythonExecutable, scriptsDirectory, entryPoint, workingDirectory, localDependenciesDirectory, venvCacheMaxBytes, false);
+    }
+
+    public PythonHost(String pythonExecutable, File scriptsDirectory, String entryPoint, String workingDirectory,
+                      String localDependenciesDirectory, long venvCacheMaxBytes, boolean sharedEnvironment) throws IOException {
+        this(pythonExecutable, scriptsDirectory, entryPoint, workingDirectory, localDependenciesDirectory,
+                new EnvironmentOptions().venvCacheMaxBytes(venvCacheMaxBytes).sharedEnvironment(sharedEnvironment));
+    }
+
+    /**
+     * @param options: venv cache, shared environment and bytecode settings (see EnvironmentOptions)
+     */
+    public PythonHost(String pythonExecutable, File scriptsDirectory, String entryPoint, String workingDirectory,
+                      String localDependenciesDirectory, EnvironmentOptions options) throws IOException {
         // explores the working directory to find requirements.txt
         // and build the PythonEnvironment
 
+        this.scriptsDirectory = scriptsDirectory;
+        this.asyncQueueCapacity = options.getAsyncQueueCapacity();
+
         // we check that it's a directory
         if (!scriptsDirectory.isDirectory()) {
             String msg = "scriptsDirectory " + scriptsDirectory + " is not a directory.";
@@ -73,18 +143,138 @@ public class PythonHost {
         }
 
         // check the entry point and verify we have the file
-        buildEntryPoint(entryPoint, scriptsDirectory);
+        String[] parsedEntryPoint = parseEntryPoint(entryPoint, scriptsDirectory);
+        importStatement = parsedEntryPoint[0];
+        callableMethod = parsedEntryPoint[1];
+        entryPointParameters = positionalParameters(
+                readAllLines(scriptPath(entryPoint.split("\\."), scriptsDirectory), StandardCharsets.UTF_8), callableMethod);
 
         // build the python environment
-        pythonEnv = PythonEnvironment.build(pipRequirements.toArray(new String[0]),
-                Paths.get(workingDirectory), Paths.get(pythonExecutable),
-                null, localDependenciesDirectory, scriptsDirectory.toString());
+        String[] requirementsArray = pipRequirements.toArray(new String[0]);
+        Supplier<PythonEngine> environmentBuilder = () -> buildEngine(requirementsArray, Paths.get(workingDirectory),
+                Paths.get(pythonExecutable), localDependenciesDirectory, scriptsDirectory.toString(), options);
+        if (options.isSharedEnvironment()) {
+            sharedEnvironmentKey = String.join("|", pythonExecutable, scriptsDirectory.getAbsolutePath(),
+                    workingDirectory, String.valueOf(localDependenciesDirectory), String.valueOf(options.getPycacheDirectory()),
+                    options.getEngine(), String.valueOf(options.getWorkerProcesses()), String.join("\n", requirementsArray),
+                    String.valueOf(options.getInitMethod()), String.valueOf(options.getInitSettings()));
+            pythonEnv = SHARED.acquire(sharedEnvironmentKey, environmentBuilder);
+        } else {
+            sharedEnvironmentKey = null;
+            pythonEnv = environmentBuilder.get();
+        }
 
         // now that the env is running, we call "import <importStatement>" to be ready to call the function
         guestLibraryAlias = "guest_" + UUID.randomUUID().toString().replace("-", "_");
-        pythonEnv.executePythonStatement("import " + importStatement + " as " + guestLibraryAlias);
-        //pythonEnv.executePythonStatement("print(dir(" + guestLibraryAlias + "))");
+        try {
+            pythonEnv.executePythonStatement("import " + importStatement + " as " + guestLibraryAlias);
+            //pythonEnv.executePythonStatement("print(dir(" + guestLibraryAlias + "))");
+            this.entryPoint = pythonEnv.bind(guestLibraryAlias, callableMethod);
+        } catch (Exception | Error e) {
+            // nobody can close this host: the engine (or its use) and the venv are released here
+            releaseEnvironment();
+            throw e;
+        }
+    }
+
+    @SneakyThrows
+    private static PythonEngine buildEngine(String[] requirements, Path workingDirectory, Path pythonExecutable,
+                                            String localDependenciesDirectory, String scriptsDirectory,
+                                            EnvironmentOptions options) {
+        String engine = options.getEngine();
+        if (engine.equals(ENGINE_STUB)) {
+            // no python, no venv
+            return new StubEngine();
+        }
+        VirtualEnvironment venv = PythonEnvironment.buildVirtualEnvironment(requirements, workingDirectory,
+                pythonExecutable, null, localDependenciesDirectory, scriptsDirectory, options);
+        try {
+            return startEngine(engine, venv, options);
+        } catch (Exception | Error e) {
+            // acquired by buildVirtualEnvironment for the engine
+            VenvCache.release(Paths.get(venv.getPath()));
+            throw e;
+        }
+    }
+
+    private static PythonEngine startEngine(String engine, VirtualEnvironment venv, EnvironmentOptions options)
+            throws IOException {
+        switch (engine) {
+            case ENGINE_PEMJA:
+                return new PythonEnvironment(venv);
+            case ENGINE_PROCESS:
+                return new ProcessWorkerPool(venv, options.getWorkerProcesses());
+            case ENGINE_GRAALPY:
+                String fallbackReason = graalPyFallbackReason(venv);
+                if (fallbackReason == null) {
+                    return new GraalPyEngine(venv);
+                }
+                System.out.println("running the scripts with pemja instead of GraalPy: " + fallbackReason);
+                return new PythonEnvironment(venv);
+            default:
+                throw new IllegalArgumentException("Unknown python engine " + engine);
+        }
+    }
+
+    private static String graalPyFallbackReason(VirtualEnvironment venv) throws IOException {
+        if (!GraalPyEngine.isAvailable()) {
+            return "the GraalPy jars are not in the classpath";
+        }
+        String nativeExtension = GraalPyEngine.nativeExtension(venv);
+        if (nativeExtension != null) {
+            return "the requirements contain native extensions (" + nativeExtension + ")";
+        }
+        return null;
+    }
+
+    private PythonHost(PythonHost source, boolean subInterpreter) throws IOException {
+        scriptsDirectory = source.scriptsDirectory;
+        asyncQueueCapacity = source.asyncQueueCapacity;
+        sharedEnvironmentKey = null;
+        importStatement = source.importStatement;
+        callableMethod = source.callableMethod;
+        entryPointParameters = source.entryPointParameters;
+
+        pythonEnv = source.pythonEnv.newInterpreter(subInterpreter);
+        try {
+            acquireVirtualEnvironment();
+        } catch (RuntimeException | Error e) {
+            pythonEnv.close();
+            throw e;
+        }
+        guestLibraryAlias = "guest_" + UUID.randomUUID().toString().replace("-", "_");
+        try {
+            pythonEnv.executePythonStatement("import " + importStatement + " as " + guestLibraryAlias);
+            entryPoint = pythonEnv.bind(guestLibraryAlias, callableMethod);
+            for (String namedEntryPoint: source.namedEntryPoints.keySet()) {
+                addEntryPoint(namedEntryPoint);
+            }
+        } catch (Exception | Error e) {
+            releaseEnvironment();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a host running the same scripts in a new interpreter, without rebuilding the virtual environment.
+     * The init method (if any) has to be called on the new host.
+     *
+     * @param subInterpreter: a sub-interpreter instead of a thread of the main interpreter (see PythonEngine.newInterpreter)
+     * @throws ConfigException if the engine can't start other interpreters (see supportsNewInterpreter)
+     */
+    public PythonHost newInterpreter(boolean subInterpreter) throws IOException {
+        if (!supportsNewInterpreter()) {
+            throw new ConfigException("The python worker processes can't start other interpreters: " +
+                    "set the number of worker processes instead of pooling the hosts.");
+        }
+        return new PythonHost(this, subInterpreter);
+    }
 
+    /**
+     * @return true if newInterpreter() can be called (not with the python worker processes)
+     */
+    public boolean supportsNewInterpreter() {
+        return pythonEnv.supportsNewInterpreter();
     }
 
     private void ensurePemjaRequirement(List<String> pipRequirements) {
@@ -112,8 +302,9 @@ public class PythonHost {
      * @param entryPoint: the entry point provided by the user
      * @param scriptsDirectory: the user scripts directory where we'll search for the script
      * referenced in the entry point
+     * @return the import statement and the name of the callable method
      */
-    private void buildEntryPoint(String entryPoint, File scriptsDirectory) throws IOException {
+    private static String[] parseEntryPoint(String entryPoint, File scriptsDirectory) throws IOException {
         // analyze entry point
         String[] items = entryPoint.split("\\.");
         if (items.length < 2) {
@@ -121,16 +312,13 @@ public class PythonHost {
             System.out.println("ERROR" + msg);
             throw new IOException(msg);
         }
-        callableMethod = items[items.length-1];
+        String callableMethod = items[items.length-1];
 
         String[] scriptItems = Arrays.copyOf(items, items.length-1);
-        String[] scriptPath = Arrays.copyOf(items, items.length-2);
-        String scriptName = items[items.length-2] + ".py";
-
-        importStatement = String.join(".", scriptItems);
+        String importStatement = String.join(".", scriptItems);
 
         // search for the proper file (using scriptItems)
-        Path targetScript = Paths.get(scriptsDirectory.toString(), String.join("/", scriptPath), scriptName);
+        Path targetScript = scriptPath(items, scriptsDirectory);
 
         // open the file and check that a function with the proper name exists
         List<String> scriptContents;
@@ -155,21 +343,294 @@ public class PythonHost {
             System.out.println("ERROR" + msg);
             throw new IOException(msg);
         }
+        return new String[]{importStatement, callableMethod};
+    }
+
+    private static Path scriptPath(String[] entryPointItems, File scriptsDirectory) {
+        String[] scriptPath = Arrays.copyOf(entryPointItems, entryPointItems.length-2);
+        String scriptName = entryPointItems[entryPointItems.length-2] + ".py";
+        return Paths.get(scriptsDirectory.toString(), String.join("/", scriptPath), scriptName);
+    }
+
+    /**
+     * Reads the definition of a function in the script (python isn't involved, the engines can't all introspect).
+     *
+     * @return the number of positional parameters of the function, Integer.MAX_VALUE if it takes *args,
+     * -1 if its definition isn't found
+     */
+    static int positionalParameters(List<String> scriptContents, String function) {
+        String source = String.join("\n", scriptContents);
+        Matcher definition = Pattern.compile("^\\s*(async\\s+)?def\\s+" + Pattern.quote(function) + "\\s*\\(",
+                Pattern.MULTILINE).matcher(source);
+        if (!definition.find()) {
+            return -1;
+        }
+
+        // splits the parameters at the top-level commas, skipping the strings and comments of the defaults
+        List<String> parameters = new ArrayList<>();
+        StringBuilder parameter = new StringBuilder();
+        int depth = 0;
+        char quote = 0;
+        for (int i = definition.end(); i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '#') {
+                while (i < source.length() && source.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if ((c == ')' || c == ']' || c == '}') && depth > 0) {
+                depth--;
+            } else if (c == ')' || c == ',' && depth == 0) {
+                parameters.add(parameter.toString().trim());
+                parameter.setLength(0);
+                if (c == ')') {
+                    break;
+                }
+            } else if (depth == 0) {
+                parameter.append(c);
+            }
+        }
+
+        int count = 0;
+        for (String p: parameters) {
+            String name = p.split("[:=]", 2)[0].trim();
+            if (name.equals("*")) {
+                // keyword-only parameters follow
+                break;
+            } else if (name.startsWith("**")) {
+                continue;
+            } else if (name.startsWith("*")) {
+                return Integer.MAX_VALUE;
+            } else if (!name.isEmpty() && !name.equals("/")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Imports an additional entry point (eg. a batch transform living in another script of
+     * the scripts directory) under its own alias, so that it can be called with callNamedEntryPoint().
+     *
+     * @param entryPoint: the entry point, in the same format as the main entry point
+     */
+    public void addEntryPoint(String entryPoint) throws IOException {
+        String[] parsedEntryPoint = parseEntryPoint(entryPoint, scriptsDirectory);
+        String alias = "guest_" + UUID.randomUUID().toString().replace("-", "_");
+        pythonEnv.executePythonStatement("import " + parsedEntryPoint[0] + " as " + alias);
+        namedEntryPoints.put(entryPoint, pythonEnv.bind(alias, parsedEntryPoint[1]));
+    }
+
+    /**
+     * @return the handle of an entry point added with addEntryPoint()
+     */
+    public PythonCallable namedEntryPoint(String entryPoint) {
+        PythonCallable callable = namedEntryPoints.get(entryPoint);
+        if (callable == null) {
+            throw new IllegalStateException("Entry point " + entryPoint + " has not been added to the python host.");
+        }
+        return callable;
+    }
+
+    /**
+     * Returns a handle taking a single record, whose concurrent calls are merged into calls of a batch function
+     * (see CallCoalescer). If the environment is shared, so is the coalescer: the records of all the hosts using the
+     * environment are batched together (with the settings of the first host).
+     *
+     * @param batchEntryPoint: the batch function, called with a list of records and returning the list of their results
+     * @param maxBatchSize: maximum number of records per call of the batch function
+     * @param lingerMs: how long to wait for more records when the interpreter is idle (0: no wait)
+     */
+    public PythonCallable coalescingEntryPoint(String batchEntryPoint, int maxBatchSize, long lingerMs) throws IOException {
+        if (!namedEntryPoints.containsKey(batchEntryPoint)) {
+            addEntryPoint(batchEntryPoint);
+        }
+        PythonCallable batchFunction = namedEntryPoint(batchEntryPoint);
+        CallCoalescer coalescer;
+        if (sharedEnvironmentKey != null) {
+            coalescer = SHARED_COALESCERS.compute(sharedEnvironmentKey + "|" + batchEntryPoint,
+                    (key, shared) -> shared != null && shared.engine == pythonEnv ? shared :
+                            new SharedCoalescer(pythonEnv, new CallCoalescer(batchFunction::call, maxBatchSize, lingerMs))
+            ).coalescer;
+        } else {
+            coalescer = coalescers.computeIfAbsent(batchEntryPoint,
+                    key -> new CallCoalescer(batchFunction::call, maxBatchSize, lingerMs));
+        }
+        return new PythonCallable() {
+            @Override
+            public Object call(Object... args) {
+                if (args.length != 1) {
+                    throw new IllegalArgumentException("A coalesced call takes a single record, not " + args.length + " arguments.");
+                }
+                return coalescer.call(args[0]);
+            }
+
+            @Override
+            public String getFunctionName() {
+                return batchFunction.getFunctionName();
+            }
+        };
+    }
+
+    public Object callNamedEntryPoint(String entryPoint, Object... args) {
+        return namedEntryPoint(entryPoint).call(args);
     }
 
     public void executePythonStatement(String pythonStatement) {
         pythonEnv.executePythonStatement(pythonStatement);
     }
 
+    /**
+     * @return the handle of a function of the entry point's script (eg. the init method)
+     */
+    public PythonCallable method(String methodName) {
+        return methods.computeIfAbsent(methodName, name -> pythonEnv.bind(guestLibraryAlias, name));
+    }
+
     public Object callPythonMethod(String methodName, Object... args) {
-        return pythonEnv.callPythonMethod(guestLibraryAlias + "." + methodName, args);
+        return method(methodName).call(args);
+    }
+
+    /**
+     * @return the handle of the entry point
+     */
+    public PythonCallable entryPoint() {
+        return entryPoint;
+    }
+
+    /**
+     * @return the number of positional parameters of the entry point, read from its definition when the host is
+     * built (Integer.MAX_VALUE if it takes *args)
+     */
+    public int entryPointParameters() {
+        return entryPointParameters;
     }
 
     public Object callEntryPoint(Object... args) {
-        return pythonEnv.callPythonMethod(guestLibraryAlias + "." + callableMethod, args);
+        return entryPoint.call(args);
+    }
+
+    /**
+     * Runs the calls of the async API with this executor (owned by the caller) instead of the python thread of the host.
+     */
+    public synchronized void setAsyncExecutor(Executor executor) {
+        this.asyncExecutor = executor;
+    }
+
+    /**
+     * Calls a function in the background: the calls are run by the executor set with setAsyncExecutor(), or by
+     * the python thread of the host (started on first use, with a queue of EnvironmentOptions.asyncQueueCapacity calls).
+     *
+     * @return the result of the call, or its error (a RejectedExecutionException if the queue is full, an
+     * IllegalStateException if the host is closed)
+     */
+    public CompletableFuture<Object> callAsync(PythonCallable callable, Object... args) {
+        Executor executor = asyncExecutor();
+        if (executor == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("The python host is closed."));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> callable.call(args), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<Object> callEntryPointAsync(Object... args) {
+        return callAsync(entryPoint, args);
+    }
+
+    public CompletableFuture<Object> callNamedEntryPointAsync(String entryPoint, Object... args) {
+        return callAsync(namedEntryPoint(entryPoint), args);
+    }
+
+    public CompletableFuture<Object> callPythonMethodAsync(String methodName, Object... args) {
+        return callAsync(method(methodName), args);
+    }
+
+    // null once the host is closed: no python thread is started after close()
+    private synchronized Executor asyncExecutor() {
+        if (closed) {
+            return null;
+        }
+        if (asyncExecutor == null) {
+            pythonThread = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(asyncQueueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, "python-host-" + guestLibraryAlias);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            asyncExecutor = pythonThread;
+        }
+        return asyncExecutor;
     }
 
     public String venvPath() {
         return pythonEnv.getVirtualEnvironmentPath();
     }
+
+    /**
+     * @return the counters of the calls made through the python engine (shared with the other hosts if the
+     * environment is shared)
+     */
+    public EngineStats engineStats() {
+        return pythonEnv.getStats();
+    }
+
+    /**
+     * Closes the python interpreter, or releases it if it's shared (it's closed by the last host using it).
+     */
+    public void close() {
+        synchronized (this) {
+            // the environment and the venv are released once
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // the queued calls run (and fail if the interpreter is closed before them)
+            if (pythonThread != null) {
+                pythonThread.shutdown();
+            }
+        }
+        System.out.println("python engine stats: " + pythonEnv.getStats());
+        releaseEnvironment();
+    }
+
+    private void releaseEnvironment() {
+        if (sharedEnvironmentKey != null) {
+            if (SHARED.release(sharedEnvironmentKey)) {
+                SHARED_COALESCERS.values().removeIf(shared -> shared.engine == pythonEnv);
+                releaseVirtualEnvironment();
+            }
+        } else {
+            pythonEnv.close();
+            releaseVirtualEnvironment();
+        }
+    }
+
+    // the venv is acquired once per build of the environment (see PythonEnvironment.buildVirtualEnvironment)
+    // and per host created by newInterpreter(), it can be evicted once they're all closed
+    @SneakyThrows
+    private void acquireVirtualEnvironment() {
+        if (pythonEnv.getVirtualEnvironmentPath() != null) {
+            VenvCache.acquire(Paths.get(pythonEnv.getVirtualEnvironmentPath()));
+        }
+    }
+
+    private void releaseVirtualEnvironment() {
+        if (pythonEnv.getVirtualEnvironmentPath() != null) {
+            VenvCache.release(Paths.get(pythonEnv.getVirtualEnvironmentPath()));
+        }
+    }
 }
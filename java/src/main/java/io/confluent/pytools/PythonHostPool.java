@@ -0,0 +1,108 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.common.config.ConfigException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A fixed set of python interpreters running the same scripts on top of one virtual environment.
+ * Each call checks out a free interpreter, so that concurrent callers don't queue behind a single one.
+ */
+public class PythonHostPool {
+
+    public static final String EXEC_TYPE_AUTO = "auto";
+    public static final String EXEC_TYPE_MULTI_THREAD = "multi_thread";
+    public static final String EXEC_TYPE_SUB_INTERPRETER = "sub_interpreter";
+
+    // per-interpreter GIL (PEP 684) is available from python 3.12
+    private static final int PER_INTERPRETER_GIL_MINOR_VERSION = 12;
+
+    private final List<PythonHost> hosts;
+    private final BlockingQueue<PythonHost> idleHosts;
+
+    private PythonHostPool(List<PythonHost> hosts) {
+        this.hosts = Collections.unmodifiableList(hosts);
+        this.idleHosts = new ArrayBlockingQueue<>(hosts.size(), false, hosts);
+    }
+
+    /**
+     * Builds a pool of size interpreters, the first one being the given host.
+     *
+     * @param firstHost: a host with a built virtual environment
+     * @param size: the total number of interpreters in the pool
+     * @param subInterpreters: the additional interpreters are sub-interpreters instead of threads of the main interpreter
+     * @throws ConfigException if size > 1 and the engine of the host can't start other interpreters
+     */
+    public static PythonHostPool build(PythonHost firstHost, int size, boolean subInterpreters) throws IOException {
+        if (size > 1 && !firstHost.supportsNewInterpreter()) {
+            throw new ConfigException("An interpreter pool of " + size + " can't be built with the python worker " +
+                    "processes: set the number of worker processes instead.");
+        }
+        List<PythonHost> hosts = new ArrayList<>(size);
+        hosts.add(firstHost);
+        for (int i = 1; i < size; i++) {
+            hosts.add(firstHost.newInterpreter(subInterpreters));
+        }
+        return new PythonHostPool(hosts);
+    }
+
+    /**
+     * Picks the execution type of the pooled interpreters.
+     * "auto" uses sub-interpreters when the python version has a per-interpreter GIL,
+     * threads sharing the main interpreter otherwise.
+     *
+     * @param execTypeConf: auto, multi_thread or sub_interpreter
+     * @param pythonVersion: major.minor version of the python executable
+     * @return true for sub-interpreters, false for threads of the main interpreter
+     */
+    public static boolean useSubInterpreters(String execTypeConf, String pythonVersion) {
+        switch (execTypeConf.toLowerCase()) {
+            case EXEC_TYPE_MULTI_THREAD:
+                return false;
+            case EXEC_TYPE_SUB_INTERPRETER:
+                return true;
+            case EXEC_TYPE_AUTO:
+                String[] versionItems = pythonVersion.trim().split("\\.");
+                if (versionItems.length >= 2
+                        && Integer.parseInt(versionItems[0]) == 3
+                        && Integer.parseInt(versionItems[1]) >= PER_INTERPRETER_GIL_MINOR_VERSION) {
+                    return true;
+                }
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown interpreter execution type: " + execTypeConf);
+        }
+    }
+
+    /**
+     * Runs the call on a free interpreter, waiting for one if they're all busy.
+     */
+    @SneakyThrows
+    public <T> T withHost(Function<PythonHost, T> call) {
+        PythonHost host = idleHosts.take();
+        try {
+            return call.apply(host);
+        } finally {
+            idleHosts.offer(host);
+        }
+    }
+
+    /**
+     * Runs the call on every interpreter of the pool (eg. to call the init method).
+     */
+    public void forEach(Consumer<PythonHost> call) {
+        hosts.forEach(call);
+    }
+
+    public int size() {
+        return hosts.size();
+    }
+}
@@ -3,10 +3,9 @@ package io.confluent.pytools;
 import org.apache.kafka.connect.data.Struct;
 import org.apache.kafka.connect.header.ConnectHeaders;
 import org.apache.kafka.connect.data.Schema;
-import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.source.SourceRecord;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -20,43 +19,20 @@ public class PythonPollResult {
     final static String KEY = "key";
     final static String VALUE = "value";
     final static String OFFSET = "offset";
+    final static String SOURCE_PARTITION = "source_partition";
 
-    public static Object getLatestOffset(ArrayList<HashMap<String, HashMap<String, Object>>> rawResults) {
-        Object latest = null;
-        for (HashMap<String, HashMap<String, Object>> rawResult: rawResults) {
-            if (rawResult.get(OFFSET) != null) {
-                latest = rawResult.get(OFFSET);
-            }
-        }
-        return latest;
-    }
-
-    // TODO support for nested types
-    // pemja casts python ints into longs (INT64) and floats into doubles (FLOAT64)
-    private static void populateSchemaFieldsFromObject(SchemaBuilder builder, HashMap<String, Object> objectMap) {
-        for (Map.Entry<String, Object> entry : objectMap.entrySet()) {
-            Schema fieldSchema = PyJavaIO.getSchemaFromJavaClassName(
-                    entry.getValue().getClass().toString().replaceFirst("class ", ""));
-            String fieldName = entry.getKey();
-            builder.field(fieldName, fieldSchema);
-        }
-    }
-
-    private static Schema buildSchemaFromObject(String structName, HashMap<String, Object> objectMap) {
-        SchemaBuilder builder = new SchemaBuilder(Schema.Type.STRUCT);
-        builder.name(structName);
-        populateSchemaFieldsFromObject(builder, objectMap);
-        return builder.build();
-    }
+    // shared by all the tasks: the same dict shape always maps to the same schema instance
+    private static final SchemaInferenceCache inferredSchemas = new SchemaInferenceCache();
 
-    private static Schema getSchemaFromPollResultAsMap(HashMap<String, Object> keyOrValue, String scriptName) {
-        String structName = scriptName + ".key";
-        return buildSchemaFromObject(structName, keyOrValue);
+    // the struct names (and versions) of the keys and values are distinct only if separateValueStruct is set:
+    // by default the value structs keep the historical "<script>.key" name, for the existing subjects
+    private static Schema getSchemaFromPollResultAsMap(HashMap<String, Object> keyOrValue, String structName) {
+        return inferredSchemas.get(structName, keyOrValue);
     }
 
-    private Schema getSchemaFromPollResult(Object keyOrValue, String scriptName) {
+    private Schema getSchemaFromPollResult(Object keyOrValue, String structName) {
         if (keyOrValue instanceof HashMap) {
-            return getSchemaFromPollResultAsMap((HashMap<String, Object>)keyOrValue, scriptName);
+            return getSchemaFromPollResultAsMap((HashMap<String, Object>)keyOrValue, structName);
         }
         return PyJavaIO.getSchemaFromDataType(keyOrValue);
     }
@@ -99,13 +75,53 @@ public class PythonPollResult {
         }
     }
 
+    // fills the declared schema with the converter built for it, no type discovery
+    private static Object getDataFromDeclaredSchema(Object keyOrValue, SchemaConverter declared, String keyOrValueName) {
+        try {
+            return declared.fromPython(keyOrValue);
+        } catch (RuntimeException e) {
+            throw new DataException("The " + keyOrValueName + " returned by python doesn't match the declared schema: " + keyOrValue, e);
+        }
+    }
+
     public PythonPollResult(HashMap<String, HashMap<String, Object>> rawResult,
                             String scriptName) {
-        keySchema = getSchemaFromPollResult(rawResult.get(KEY), scriptName);
-        key = getDataFromPollResult(rawResult.get(KEY), keySchema);
+        this(rawResult, scriptName, null, null);
+    }
+
+    public PythonPollResult(HashMap<String, HashMap<String, Object>> rawResult,
+                            String scriptName,
+                            SchemaConverter declaredKey,
+                            SchemaConverter declaredValue) {
+        this(rawResult, scriptName, declaredKey, declaredValue, false);
+    }
 
-        valueSchema = getSchemaFromPollResult(rawResult.get(VALUE), scriptName);
-        value = getDataFromPollResult(rawResult.get(VALUE), valueSchema);
+    /**
+     * @param declaredKey: converter of the declared key schema, or null to infer the key schema
+     * @param declaredValue: converter of the declared value schema, or null to infer the value schema
+     * @param separateValueStruct: name the inferred value structs "<script>.value" instead of "<script>.key"
+     */
+    public PythonPollResult(HashMap<String, HashMap<String, Object>> rawResult,
+                            String scriptName,
+                            SchemaConverter declaredKey,
+                            SchemaConverter declaredValue,
+                            boolean separateValueStruct) {
+        if (declaredKey != null) {
+            keySchema = declaredKey.schema();
+            key = getDataFromDeclaredSchema(rawResult.get(KEY), declaredKey, KEY);
+        } else {
+            keySchema = getSchemaFromPollResult(rawResult.get(KEY), scriptName + "." + KEY);
+            key = getDataFromPollResult(rawResult.get(KEY), keySchema);
+        }
+
+        if (declaredValue != null) {
+            valueSchema = declaredValue.schema();
+            value = getDataFromDeclaredSchema(rawResult.get(VALUE), declaredValue, VALUE);
+        } else {
+            valueSchema = getSchemaFromPollResult(rawResult.get(VALUE),
+                    scriptName + "." + (separateValueStruct ? VALUE : KEY));
+            value = getDataFromPollResult(rawResult.get(VALUE), valueSchema);
+        }
     }
 
     public SourceRecord toSourceRecord(Map<String, Object> sourcePartition,
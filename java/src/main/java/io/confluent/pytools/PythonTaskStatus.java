@@ -0,0 +1,106 @@
+package io.confluent.pytools;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+
+/**
+ * State of the python environment of a source task: logged at each transition and registered as an MBean
+ * (io.confluent.pytools:type=python-source-task,connector=<name>,task=<id>), so that the workers' JMX monitoring
+ * sees the tasks whose environment is still being built (async startup) or failed to start.
+ */
+public class PythonTaskStatus implements PythonTaskStatusMBean {
+
+    public static final String STARTING = "starting";
+    public static final String READY = "ready";
+    public static final String FAILED = "failed";
+    public static final String STOPPED = "stopped";
+
+    private static final HashMap<ObjectName, PythonTaskStatus> REGISTERED = new HashMap<>();
+
+    private final String name;
+    private final long startTime = System.currentTimeMillis();
+    private volatile String status = STARTING;
+    private volatile long startupTimeMs = -1;
+    private ObjectName objectName;
+
+    PythonTaskStatus(String name) {
+        this.name = name;
+        System.out.println(name + ": python environment " + STARTING);
+    }
+
+    /**
+     * @return the status of the task, registered as an MBean (replacing the one of a previous task with the same id)
+     */
+    public static PythonTaskStatus register(String connectorName, int taskId) {
+        PythonTaskStatus taskStatus = new PythonTaskStatus(connectorName + "-" + taskId);
+        try {
+            ObjectName objectName = new ObjectName("io.confluent.pytools:type=python-source-task,connector=" +
+                    ObjectName.quote(connectorName) + ",task=" + taskId);
+            synchronized (PythonTaskStatus.class) {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(taskStatus, objectName);
+                REGISTERED.put(objectName, taskStatus);
+            }
+            taskStatus.objectName = objectName;
+        } catch (Exception e) {
+            System.out.println("could not register the status MBean of " + taskStatus.name + ": " + e);
+        }
+        return taskStatus;
+    }
+
+    void ready() {
+        startupTimeMs = System.currentTimeMillis() - startTime;
+        transition(READY, " in " + startupTimeMs + " ms");
+    }
+
+    void failed(Throwable e) {
+        transition(FAILED, ": " + e);
+    }
+
+    /**
+     * The python environment is closed: the MBean is unregistered.
+     */
+    synchronized void stopped() {
+        transition(STOPPED, "");
+        if (objectName != null) {
+            synchronized (PythonTaskStatus.class) {
+                // unless it has been replaced by a new task with the same id
+                if (REGISTERED.remove(objectName, this)) {
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                    } catch (Exception e) {
+                        System.out.println("could not unregister the status MBean of " + name + ": " + e);
+                    }
+                }
+            }
+            objectName = null;
+        }
+    }
+
+    private synchronized void transition(String newStatus, String details) {
+        if (!newStatus.equals(status)) {
+            System.out.println(name + ": python environment " + status + " -> " + newStatus + details);
+            status = newStatus;
+        }
+    }
+
+    @Override
+    public String getStatus() {
+        return status;
+    }
+
+    @Override
+    public boolean isReady() {
+        return READY.equals(status);
+    }
+
+    @Override
+    public long getStartupTimeMs() {
+        return startupTimeMs;
+    }
+}
@@ -0,0 +1,22 @@
+package io.confluent.pytools;
+
+/**
+ * JMX view of the python environment of a source task (see PythonTaskStatus).
+ */
+public interface PythonTaskStatusMBean {
+
+    /**
+     * @return starting, ready, failed or stopped
+     */
+    String getStatus();
+
+    /**
+     * @return true once the python environment is built and the init method has been called
+     */
+    boolean isReady();
+
+    /**
+     * @return how long the python environment took to start, -1 until it's ready
+     */
+    long getStartupTimeMs();
+}
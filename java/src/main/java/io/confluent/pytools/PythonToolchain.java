@@ -0,0 +1,123 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the environment builds need to know about a python executable: its version, ABI and site-packages paths.
+ *
+ * Probing an executable spawns a python process (and resolving the default one spawns "which python3"):
+ * the probes are memoized per executable for the lifetime of the JVM, so that the tasks and transforms starting
+ * together pay for them once. invalidate() forgets an executable that was replaced (eg. upgraded in place).
+ */
+public class PythonToolchain {
+
+    // a single process for all the probes
+    private static final String PROBE_SCRIPT = "import sys, sysconfig; " +
+            "print(\"%d.%d\" % sys.version_info[:2]); print(sysconfig.get_paths()[\"purelib\"]); " +
+            "print(sys.implementation.cache_tag + \"-\" + sysconfig.get_platform())";
+
+    private static final ConcurrentHashMap<String, PythonToolchain> toolchains = new ConcurrentHashMap<>();
+    private static volatile Path defaultExecutable;
+
+    private final String executable;
+    private final String version;
+    private final String purelib;
+    private final String abi;
+
+    PythonToolchain(String executable, String version, String purelib, String abi) {
+        this.executable = executable;
+        this.version = version;
+        this.purelib = purelib;
+        this.abi = abi;
+    }
+
+    /**
+     * @return the (memoized) toolchain of the python executable
+     */
+    public static PythonToolchain of(String pythonExecutable) {
+        return toolchains.computeIfAbsent(pythonExecutable, PythonToolchain::probe);
+    }
+
+    /**
+     * @return the (memoized) path of the default python3 executable of the system
+     */
+    @SneakyThrows
+    public static Path defaultExecutable() {
+        Path executable = defaultExecutable;
+        if (executable == null) {
+            String cmdOutput = OperatingSystemProcess.execute(new String[]{"which", "python3"});
+            if (cmdOutput.contains("not found")) {
+                throw new IOException("No default python3 instance found");
+            }
+            executable = Paths.get(cmdOutput);
+            defaultExecutable = executable;
+        }
+        return executable;
+    }
+
+    /**
+     * Forgets the probes of a python executable, they're run again on the next use.
+     */
+    public static void invalidate(String pythonExecutable) {
+        toolchains.remove(pythonExecutable);
+    }
+
+    /**
+     * Forgets all the probes, including the default python executable.
+     */
+    public static void invalidateAll() {
+        toolchains.clear();
+        defaultExecutable = null;
+    }
+
+    private static PythonToolchain probe(String pythonExecutable) {
+        return parse(pythonExecutable, OperatingSystemProcess.execute(new String[]{pythonExecutable, "-c", PROBE_SCRIPT}));
+    }
+
+    static PythonToolchain parse(String pythonExecutable, String probeOutput) {
+        String[] lines = probeOutput.trim().split("\\R");
+        if (lines.length < 3) {
+            throw new IllegalStateException("Unexpected output of the python executable " + pythonExecutable + ": " + probeOutput);
+        }
+        // anything printed before (eg. by a sitecustomize module) is ignored
+        int first = lines.length - 3;
+        return new PythonToolchain(pythonExecutable, lines[first].trim(), lines[first + 1].trim(), lines[first + 2].trim());
+    }
+
+    public String getExecutable() {
+        return executable;
+    }
+
+    /**
+     * @return the major.minor version (eg. "3.11")
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the site-packages directory of the pure python packages
+     */
+    public String getPurelib() {
+        return purelib;
+    }
+
+    /**
+     * @return the implementation, version and platform of the compiled packages (eg. "cpython-311-linux-x86_64")
+     */
+    public String getAbi() {
+        return abi;
+    }
+
+    /**
+     * @return the site-packages directory, and its lib64 variant used by some distributions for the native packages
+     */
+    public String[] getSitePackagesPaths() {
+        return new String[]{purelib, purelib.replaceFirst("/lib/", "/lib64/")};
+    }
+}
@@ -0,0 +1,134 @@
+package io.confluent.pytools;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of the values exchanged with the python worker processes (see ProcessWorkerPool),
+ * mirrored by pytools_worker.py. Each value is a one byte tag followed by its payload (big endian):
+ *   N: None, T/F: booleans, I: int64, D: float64,
+ *   S: int32 length + UTF-8 bytes, B: int32 length + bytes,
+ *   L: int32 count + values, M: int32 count + key/value pairs.
+ * The decoded values have the types returned by pemja: Long, Double, String, byte[], ArrayList and HashMap.
+ */
+public class PythonWireFormat {
+
+    static final byte NONE = 'N';
+    static final byte TRUE = 'T';
+    static final byte FALSE = 'F';
+    static final byte INT = 'I';
+    static final byte FLOAT = 'D';
+    static final byte STRING = 'S';
+    static final byte BYTES = 'B';
+    static final byte LIST = 'L';
+    static final byte MAP = 'M';
+
+    private PythonWireFormat() {
+    }
+
+    public static void write(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NONE);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long) {
+            out.writeByte(INT);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Float || value instanceof Double) {
+            out.writeByte(FLOAT);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            writeBytes(out, STRING, value.toString().getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof byte[]) {
+            writeBytes(out, BYTES, (byte[]) value);
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            writeBytes(out, BYTES, bytes);
+        } else if (value instanceof Collection) {
+            Collection<?> items = (Collection<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(items.size());
+            for (Object item: items) {
+                write(out, item);
+            }
+        } else if (value instanceof Object[]) {
+            Object[] items = (Object[]) value;
+            out.writeByte(LIST);
+            out.writeInt(items.length);
+            for (Object item: items) {
+                write(out, item);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry: map.entrySet()) {
+                write(out, entry.getKey());
+                write(out, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Values of type " + value.getClass().getName() + " can't be passed to a python worker process.");
+        }
+    }
+
+    public static Object read(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NONE:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return in.readLong();
+            case FLOAT:
+                return in.readDouble();
+            case STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case BYTES:
+                return readBytes(in);
+            case LIST: {
+                int count = in.readInt();
+                List<Object> items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(read(in));
+                }
+                return items;
+            }
+            case MAP: {
+                int count = in.readInt();
+                Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    Object key = read(in);
+                    map.put(key, read(in));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("Unknown value tag " + tag + " received from a python worker process.");
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte tag, byte[] bytes) throws IOException {
+        out.writeByte(tag);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,245 @@
+package io.confluent.pytools;
+
+import org.apache.kafka.connect.data.Date;
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Converts the payloads of one schema to and from python data.
+ * The normalized type name and the field by field conversion functions are computed once, when the
+ * converter is built (see SchemaConverterCache), so converting a payload doesn't inspect the schema anymore.
+ *
+ * With the dict transport, Structs and Maps are passed as HashMaps (dicts), arrays as ArrayLists (lists)
+ * and bytes as byte[]. Values returned by python are cast back to the schema types
+ * (pemja returns python ints as Longs and floats as Doubles).
+ * The Connect logical types are passed as their Connect encoding: Date as days since the epoch, Time as milliseconds
+ * since midnight, Timestamp as milliseconds since the epoch, and Decimal as a string (python's decimal.Decimal(str)).
+ */
+public class SchemaConverter {
+
+    // schemaless payloads (null schema) are passed as is
+    static final SchemaConverter SCHEMALESS = new SchemaConverter(null, null, UnaryOperator.identity(), UnaryOperator.identity());
+
+    private final Schema schema;
+    private final String typeName;
+    private final UnaryOperator<Object> encoder;
+    private final UnaryOperator<Object> decoder;
+
+    private SchemaConverter(Schema schema, String typeName, UnaryOperator<Object> encoder, UnaryOperator<Object> decoder) {
+        this.schema = schema;
+        this.typeName = typeName;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * @param schema: the schema of the payloads
+     * @param structsAsJson: pass Structs as JSON strings (legacy transport) instead of dicts
+     */
+    static SchemaConverter build(Schema schema, boolean structsAsJson) {
+        if (schema == null) {
+            return SCHEMALESS;
+        }
+        String typeName = PyJavaIO.normalizedTypeName(schema);
+        if (structsAsJson) {
+            UnaryOperator<Object> encoder = UnaryOperator.identity();
+            if (schema.type() == Schema.Type.STRUCT) {
+                encoder = data -> PyJavaIO.structToJSON((Struct) data);
+            }
+            return new SchemaConverter(schema, typeName, encoder, data -> PyJavaIO.typedParse(schema, data));
+        }
+        return new SchemaConverter(schema, typeName, encoder(schema), decoder(schema));
+    }
+
+    public Schema schema() {
+        return schema;
+    }
+
+    /**
+     * @return the type name passed to python as key_schema/value_schema
+     */
+    public String typeName() {
+        return typeName;
+    }
+
+    public Object toPython(Object data) {
+        return convert(encoder, data);
+    }
+
+    public Object fromPython(Object data) {
+        return convert(decoder, data);
+    }
+
+    private static Object convert(UnaryOperator<Object> conversion, Object data) {
+        return data == null ? null : conversion.apply(data);
+    }
+
+    private static UnaryOperator<Object> encoder(Schema schema) {
+        if (schema.name() != null) {
+            switch (schema.name()) {
+                case Decimal.LOGICAL_NAME:
+                    return data -> ((BigDecimal) data).toPlainString();
+                case Date.LOGICAL_NAME:
+                    return data -> Date.fromLogical(schema, (java.util.Date) data);
+                case Time.LOGICAL_NAME:
+                    return data -> Time.fromLogical(schema, (java.util.Date) data);
+                case Timestamp.LOGICAL_NAME:
+                    return data -> Timestamp.fromLogical(schema, (java.util.Date) data);
+                default:
+                    break;
+            }
+        }
+        switch (schema.type()) {
+            case STRUCT: {
+                List<Field> fields = schema.fields();
+                List<UnaryOperator<Object>> fieldEncoders = new ArrayList<>(fields.size());
+                for (Field field: fields) {
+                    fieldEncoders.add(encoder(field.schema()));
+                }
+                return data -> {
+                    Struct struct = (Struct) data;
+                    HashMap<String, Object> structData = new HashMap<>();
+                    for (int i = 0; i < fields.size(); i++) {
+                        Field field = fields.get(i);
+                        structData.put(field.name(), convert(fieldEncoders.get(i), struct.get(field)));
+                    }
+                    return structData;
+                };
+            }
+            case ARRAY: {
+                UnaryOperator<Object> itemEncoder = encoder(schema.valueSchema());
+                return data -> {
+                    List<?> array = (List<?>) data;
+                    ArrayList<Object> arrayData = new ArrayList<>(array.size());
+                    for (Object item: array) {
+                        arrayData.add(convert(itemEncoder, item));
+                    }
+                    return arrayData;
+                };
+            }
+            case MAP: {
+                UnaryOperator<Object> keyEncoder = encoder(schema.keySchema());
+                UnaryOperator<Object> valueEncoder = encoder(schema.valueSchema());
+                return data -> {
+                    HashMap<Object, Object> mapData = new HashMap<>();
+                    for (Map.Entry<?, ?> entry: ((Map<?, ?>) data).entrySet()) {
+                        mapData.put(convert(keyEncoder, entry.getKey()), convert(valueEncoder, entry.getValue()));
+                    }
+                    return mapData;
+                };
+            }
+            case BYTES:
+                return data -> {
+                    if (data instanceof ByteBuffer) {
+                        ByteBuffer buffer = ((ByteBuffer) data).duplicate();
+                        byte[] bytes = new byte[buffer.remaining()];
+                        buffer.get(bytes);
+                        return bytes;
+                    }
+                    return data;
+                };
+            default:
+                return UnaryOperator.identity();
+        }
+    }
+
+    private static UnaryOperator<Object> decoder(Schema schema) {
+        if (schema.name() != null) {
+            switch (schema.name()) {
+                case Decimal.LOGICAL_NAME: {
+                    int scale = Integer.parseInt(schema.parameters().get(Decimal.SCALE_FIELD));
+                    return data -> data instanceof BigDecimal ? data
+                            : new BigDecimal(data.toString()).setScale(scale, RoundingMode.HALF_EVEN);
+                }
+                case Date.LOGICAL_NAME:
+                    return data -> data instanceof java.util.Date ? data
+                            : Date.toLogical(schema, ((Number) data).intValue());
+                case Time.LOGICAL_NAME:
+                    return data -> data instanceof java.util.Date ? data
+                            : Time.toLogical(schema, ((Number) data).intValue());
+                case Timestamp.LOGICAL_NAME:
+                    return data -> data instanceof java.util.Date ? data
+                            : Timestamp.toLogical(schema, ((Number) data).longValue());
+                default:
+                    break;
+            }
+        }
+        switch (schema.type()) {
+            case STRUCT: {
+                List<Field> fields = schema.fields();
+                List<UnaryOperator<Object>> fieldDecoders = new ArrayList<>(fields.size());
+                for (Field field: fields) {
+                    fieldDecoders.add(decoder(field.schema()));
+                }
+                return data -> {
+                    if (data instanceof Struct) {
+                        return data;
+                    }
+                    if (data instanceof String) {
+                        return PyJavaIO.jsonToStruct(schema, (String) data);
+                    }
+                    Map<?, ?> structData = (Map<?, ?>) data;
+                    Struct struct = new Struct(schema);
+                    for (int i = 0; i < fields.size(); i++) {
+                        Field field = fields.get(i);
+                        struct.put(field, convert(fieldDecoders.get(i), structData.get(field.name())));
+                    }
+                    return struct;
+                };
+            }
+            case ARRAY: {
+                UnaryOperator<Object> itemDecoder = decoder(schema.valueSchema());
+                return data -> {
+                    List<?> arrayData = (List<?>) data;
+                    ArrayList<Object> array = new ArrayList<>(arrayData.size());
+                    for (Object item: arrayData) {
+                        array.add(convert(itemDecoder, item));
+                    }
+                    return array;
+                };
+            }
+            case MAP: {
+                UnaryOperator<Object> keyDecoder = decoder(schema.keySchema());
+                UnaryOperator<Object> valueDecoder = decoder(schema.valueSchema());
+                return data -> {
+                    HashMap<Object, Object> map = new HashMap<>();
+                    for (Map.Entry<?, ?> entry: ((Map<?, ?>) data).entrySet()) {
+                        map.put(convert(keyDecoder, entry.getKey()), convert(valueDecoder, entry.getValue()));
+                    }
+                    return map;
+                };
+            }
+            case INT8:
+                return data -> data instanceof Number ? ((Number) data).byteValue() : Byte.parseByte(data.toString());
+            case INT16:
+                return data -> data instanceof Number ? ((Number) data).shortValue() : Short.parseShort(data.toString());
+            case INT32:
+                return data -> data instanceof Number ? ((Number) data).intValue() : Integer.parseInt(data.toString());
+            case INT64:
+                return data -> data instanceof Number ? ((Number) data).longValue() : Long.parseLong(data.toString());
+            case FLOAT32:
+                return data -> data instanceof Number ? ((Number) data).floatValue() : Float.parseFloat(data.toString());
+            case FLOAT64:
+                return data -> data instanceof Number ? ((Number) data).doubleValue() : Double.parseDouble(data.toString());
+            case BOOLEAN:
+                return data -> data instanceof Boolean ? data : Boolean.parseBoolean(data.toString());
+            case STRING:
+            case BYTES:
+            default:
+                return UnaryOperator.identity();
+        }
+    }
+}
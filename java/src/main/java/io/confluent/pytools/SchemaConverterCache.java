@@ -0,0 +1,110 @@
+package io.confluent.pytools;
+
+import org.apache.kafka.connect.data.Schema;
+
+/**
+ * Keeps one SchemaConverter per schema: the converter is built the first time a schema is seen
+ * and reused for all the following records with the same schema.
+ *
+ * The equals and hashCode of a ConnectSchema walk the whole schema tree: the lookups go by schema instance first
+ * (sources and converters usually reuse the same instance for all their records), and compare the schemas
+ * only for a new instance. The key and value converters of the last record are kept apart (see keyConverter and
+ * valueConverter), so that a record with the same schemas as the previous one doesn't look up the caches.
+ */
+public class SchemaConverterCache {
+
+    // guards against sources generating a new schema per record
+    static final int MAX_CACHED_SCHEMAS = 1000;
+
+    private static class Cached {
+        private final Schema schema;
+        private final SchemaConverter converter;
+
+        private Cached(Schema schema, SchemaConverter converter) {
+            this.schema = schema;
+            this.converter = converter;
+        }
+    }
+
+    // compares the schemas by reference
+    private static class Instance {
+        private final Schema schema;
+
+        private Instance(Schema schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Instance && ((Instance) other).schema == schema;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(schema);
+        }
+    }
+
+    private final boolean structsAsJson;
+    private final LruCache<Instance, SchemaConverter> instances = new LruCache<>(MAX_CACHED_SCHEMAS);
+    private final LruCache<Schema, SchemaConverter> converters = new LruCache<>(MAX_CACHED_SCHEMAS);
+    private volatile Cached lastKey;
+    private volatile Cached lastValue;
+
+    /**
+     * @param structsAsJson: pass Structs as JSON strings (legacy transport) instead of dicts
+     */
+    public SchemaConverterCache(boolean structsAsJson) {
+        this.structsAsJson = structsAsJson;
+    }
+
+    /**
+     * @return the converter of a record key schema
+     */
+    public SchemaConverter keyConverter(Schema schema) {
+        Cached cached = lastKey;
+        if (cached != null && cached.schema == schema) {
+            return cached.converter;
+        }
+        SchemaConverter converter = get(schema);
+        lastKey = new Cached(schema, converter);
+        return converter;
+    }
+
+    /**
+     * @return the converter of a record value schema
+     */
+    public SchemaConverter valueConverter(Schema schema) {
+        Cached cached = lastValue;
+        if (cached != null && cached.schema == schema) {
+            return cached.converter;
+        }
+        SchemaConverter converter = get(schema);
+        lastValue = new Cached(schema, converter);
+        return converter;
+    }
+
+    public SchemaConverter get(Schema schema) {
+        if (schema == null) {
+            return SchemaConverter.SCHEMALESS;
+        }
+        SchemaConverter converter;
+        synchronized (this) {
+            Instance instance = new Instance(schema);
+            converter = instances.get(instance);
+            if (converter == null) {
+                converter = converters.get(schema);
+                if (converter == null) {
+                    converter = SchemaConverter.build(schema, structsAsJson);
+                    converters.put(schema, converter);
+                }
+                instances.put(instance, converter);
+            }
+        }
+        return converter;
+    }
+
+    public synchronized int size() {
+        return converters.size();
+    }
+}
@@ -0,0 +1,115 @@
+package io.confluent.pytools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.json.JsonConverter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses the schema definitions declared in the connector config (key.schema, value.schema).
+ * Two formats are accepted:
+ * - the Connect JSON schema format, as used by the JsonConverter envelopes
+ *      {"type": "struct", "name": "user", "fields": [{"field": "id", "type": "int64"}, ...]}
+ * - an Avro schema
+ *      {"type": "record", "name": "user", "fields": [{"name": "id", "type": "long"}, ...]}
+ *   where unions with null are mapped to optional fields, enums to strings and fixed to bytes.
+ */
+public class SchemaDefinition {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SchemaDefinition() {
+    }
+
+    /**
+     * @param definition: the schema definition, Connect JSON or Avro
+     * @return the Connect schema
+     * @throws DataException if the definition can't be parsed in either format
+     */
+    public static Schema parse(String definition) {
+        JsonNode jsonSchema;
+        try {
+            jsonSchema = MAPPER.readTree(definition);
+        } catch (Exception e) {
+            throw new DataException("The schema definition is not valid JSON: " + e.getMessage(), e);
+        }
+
+        try {
+            JsonConverter converter = new JsonConverter();
+            converter.configure(Collections.emptyMap(), false);
+            return converter.asConnectSchema(jsonSchema);
+        } catch (DataException connectException) {
+            try {
+                return fromAvro(new org.apache.avro.Schema.Parser().parse(definition));
+            } catch (Exception avroException) {
+                throw new DataException("The schema definition is neither a Connect JSON schema (" +
+                        connectException.getMessage() + ") nor an Avro schema (" + avroException.getMessage() + ")");
+            }
+        }
+    }
+
+    private static Schema fromAvro(org.apache.avro.Schema avroSchema) {
+        return fromAvro(avroSchema, false);
+    }
+
+    private static Schema fromAvro(org.apache.avro.Schema avroSchema, boolean optional) {
+        SchemaBuilder builder;
+        switch (avroSchema.getType()) {
+            case RECORD:
+                builder = SchemaBuilder.struct().name(avroSchema.getFullName());
+                for (org.apache.avro.Schema.Field field: avroSchema.getFields()) {
+                    builder.field(field.name(), fromAvro(field.schema()));
+                }
+                break;
+            case UNION:
+                List<org.apache.avro.Schema> types = avroSchema.getTypes();
+                if (types.size() == 2 && types.get(0).getType() == org.apache.avro.Schema.Type.NULL) {
+                    return fromAvro(types.get(1), true);
+                }
+                if (types.size() == 2 && types.get(1).getType() == org.apache.avro.Schema.Type.NULL) {
+                    return fromAvro(types.get(0), true);
+                }
+                throw new DataException("Only unions of null and one type are supported: " + avroSchema);
+            case ARRAY:
+                builder = SchemaBuilder.array(fromAvro(avroSchema.getElementType()));
+                break;
+            case MAP:
+                builder = SchemaBuilder.map(Schema.STRING_SCHEMA, fromAvro(avroSchema.getValueType()));
+                break;
+            case ENUM:
+            case STRING:
+                builder = SchemaBuilder.string();
+                break;
+            case FIXED:
+            case BYTES:
+                builder = SchemaBuilder.bytes();
+                break;
+            case INT:
+                builder = SchemaBuilder.int32();
+                break;
+            case LONG:
+                builder = SchemaBuilder.int64();
+                break;
+            case FLOAT:
+                builder = SchemaBuilder.float32();
+                break;
+            case DOUBLE:
+                builder = SchemaBuilder.float64();
+                break;
+            case BOOLEAN:
+                builder = SchemaBuilder.bool();
+                break;
+            default:
+                throw new DataException("Unsupported Avro type: " + avroSchema.getType());
+        }
+        if (optional) {
+            builder.optional();
+        }
+        return builder.build();
+    }
+}
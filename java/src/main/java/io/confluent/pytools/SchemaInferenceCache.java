@@ -0,0 +1,71 @@
+package io.confluent.pytools;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Infers Struct schemas from the dicts returned by python, keyed by the shape of the dict
+ * (struct name, field names and java classes of the values).
+ * The same shape always gets the same (immutable) Schema instance, which lets downstream converters
+ * and Schema Registry clients cache it. A new shape for a struct name gets the next schema version.
+ * A None value gets an optional field.
+ *
+ * Past MAX_CACHED_SHAPES, the new shapes get schemas without a version and aren't cached: the versions of
+ * a struct name keep meaning a shape, and a source returning a new shape for every record doesn't grow them.
+ */
+public class SchemaInferenceCache {
+
+    // guards against sources returning a new shape for every record
+    static final int MAX_CACHED_SHAPES = 1000;
+
+    // class of the None values in the shapes
+    private static final class NoneValue {
+    }
+
+    private final ConcurrentHashMap<List<Object>, Schema> schemas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> versions = new ConcurrentHashMap<>();
+
+    public Schema get(String structName, Map<String, Object> objectMap) {
+        List<Object> shape = shapeOf(structName, objectMap);
+        Schema schema = schemas.get(shape);
+        if (schema == null) {
+            if (schemas.size() >= MAX_CACHED_SHAPES) {
+                return buildSchema(structName, objectMap, null);
+            }
+            schema = schemas.computeIfAbsent(shape, s -> buildSchema(structName, objectMap,
+                    versions.computeIfAbsent(structName, name -> new AtomicInteger()).incrementAndGet()));
+        }
+        return schema;
+    }
+
+    private static List<Object> shapeOf(String structName, Map<String, Object> objectMap) {
+        List<Object> shape = new ArrayList<>(1 + 2 * objectMap.size());
+        shape.add(structName);
+        for (Map.Entry<String, Object> entry : objectMap.entrySet()) {
+            shape.add(entry.getKey());
+            shape.add(entry.getValue() == null ? NoneValue.class : entry.getValue().getClass());
+        }
+        return shape;
+    }
+
+    // TODO support for nested types
+    // pemja casts python ints into longs (INT64) and floats into doubles (FLOAT64)
+    // a None value can't tell its type: its field is an optional string
+    private static Schema buildSchema(String structName, Map<String, Object> objectMap, Integer version) {
+        SchemaBuilder builder = SchemaBuilder.struct()
+                .name(structName)
+                .version(version);
+        for (Map.Entry<String, Object> entry : objectMap.entrySet()) {
+            builder.field(entry.getKey(), entry.getValue() == null
+                    ? Schema.OPTIONAL_STRING_SCHEMA
+                    : PyJavaIO.getSchemaFromJavaClass(entry.getValue().getClass()));
+        }
+        return builder.build();
+    }
+}
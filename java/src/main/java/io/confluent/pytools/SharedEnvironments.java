@@ -0,0 +1,82 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+
+import java.util.HashMap;
+import java.util.function.Supplier;
+
+/**
+ * JVM-wide registry of shared (python) environments, with reference counting.
+ * The users with the same key (same python executable, scripts and requirements) share one environment,
+ * built by the first of them. The environment is closed when its last user releases it.
+ *
+ * @param <T> the environment type
+ */
+public class SharedEnvironments<T extends AutoCloseable> {
+
+    private static class Entry<T> {
+        private T environment;
+        private int users;
+    }
+
+    private final HashMap<String, Entry<T>> entries = new HashMap<>();
+
+    /**
+     * @param key: the identity of the environment
+     * @param builder: builds the environment if it's not there yet
+     * @return the shared environment, to be released with release(key)
+     */
+    public T acquire(String key, Supplier<T> builder) {
+        Entry<T> entry;
+        synchronized (entries) {
+            entry = entries.computeIfAbsent(key, k -> new Entry<>());
+            entry.users++;
+        }
+
+        // the build (venv, pip install) only blocks the users of the same environment
+        try {
+            synchronized (entry) {
+                if (entry.environment == null) {
+                    entry.environment = builder.get();
+                }
+                return entry.environment;
+            }
+        } catch (RuntimeException | Error e) {
+            release(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Releases one use of the environment, and closes it if it was the last one.
+     *
+     * @return true if the environment was closed
+     */
+    @SneakyThrows
+    public boolean release(String key) {
+        T environment = null;
+        synchronized (entries) {
+            Entry<T> entry = entries.get(key);
+            if (entry == null) {
+                return false;
+            }
+            entry.users--;
+            if (entry.users == 0) {
+                entries.remove(key);
+                environment = entry.environment;
+            }
+        }
+        if (environment != null) {
+            environment.close();
+            return true;
+        }
+        return false;
+    }
+
+    public int users(String key) {
+        synchronized (entries) {
+            Entry<T> entry = entries.get(key);
+            return entry == null ? 0 : entry.users;
+        }
+    }
+}
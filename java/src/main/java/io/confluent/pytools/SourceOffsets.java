@@ -0,0 +1,136 @@
+package io.confluent.pytools;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.connect.storage.OffsetStorageReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Latest offset of each source partition of a task.
+ *
+ * The records returned by python can have a 'source_partition' (a dict, or a basic type stored as {'partition': value})
+ * and an 'offset' (stored as {'latest': offset}). Records without 'source_partition' belong to the default partition
+ * of the task ({'task.id': id}), records without 'offset' get the latest offset of their partition.
+ *
+ * The offsets are passed to python as {'latest': offset of the default partition}, plus, when there are other
+ * partitions, 'partitions': [{'partition': partition, 'offset': offset}, ...]
+ */
+public class SourceOffsets {
+
+    static final String LATEST = "latest";
+    static final String PARTITION = "partition";
+    static final String PARTITIONS = "partitions";
+    static final String OFFSET = "offset";
+
+    // python ints are Longs, the partitions parsed from the config must be equal to the ones returned by python
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(DeserializationFeature.USE_LONG_FOR_INTS);
+
+    private final Map<String, Object> defaultPartition;
+    private final Map<Map<String, Object>, Map<String, Object>> offsets = new LinkedHashMap<>();
+
+    public SourceOffsets(Map<String, Object> defaultPartition) {
+        this.defaultPartition = defaultPartition;
+    }
+
+    /**
+     * Loads the stored offsets of the default partition and of the given partitions.
+     */
+    public void load(OffsetStorageReader reader, Collection<Map<String, Object>> partitions) {
+        Set<Map<String, Object>> knownPartitions = new LinkedHashSet<>();
+        knownPartitions.add(defaultPartition);
+        knownPartitions.addAll(partitions);
+
+        Map<Map<String, Object>, Map<String, Object>> stored = reader.offsets(knownPartitions);
+        if (stored == null) {
+            return;
+        }
+        for (Map.Entry<Map<String, Object>, Map<String, Object>> entry: stored.entrySet()) {
+            if (entry.getValue() != null) {
+                offsets.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param sourcePartition: the 'source_partition' of a python record, or null
+     */
+    public Map<String, Object> partitionOf(Object sourcePartition) {
+        if (sourcePartition == null) {
+            return defaultPartition;
+        }
+        return asPartition(sourcePartition);
+    }
+
+    private static Map<String, Object> asPartition(Object sourcePartition) {
+        if (sourcePartition instanceof Map) {
+            return (Map<String, Object>) sourcePartition;
+        }
+        return Collections.singletonMap(PARTITION, sourcePartition);
+    }
+
+    /**
+     * @param offset: the 'offset' of a python record, or null
+     * @return the source offset of the record
+     */
+    public Map<String, Object> update(Map<String, Object> partition, Object offset) {
+        if (offset != null) {
+            Map<String, Object> sourceOffset = Collections.singletonMap(LATEST, offset);
+            offsets.put(partition, sourceOffset);
+            return sourceOffset;
+        }
+        return offsets.getOrDefault(partition, Collections.singletonMap(LATEST, null));
+    }
+
+    public Map<String, Object> offset(Map<String, Object> partition) {
+        return offsets.get(partition);
+    }
+
+    public HashMap<String, Object> toPython() {
+        HashMap<String, Object> pythonOffsets = new HashMap<>();
+        if (offsets.containsKey(defaultPartition)) {
+            pythonOffsets.putAll(offsets.get(defaultPartition));
+        }
+
+        ArrayList<Object> partitions = new ArrayList<>();
+        for (Map.Entry<Map<String, Object>, Map<String, Object>> entry: offsets.entrySet()) {
+            if (!entry.getKey().equals(defaultPartition)) {
+                HashMap<String, Object> partitionOffset = new HashMap<>();
+                partitionOffset.put(PARTITION, new HashMap<>(entry.getKey()));
+                partitionOffset.put(OFFSET, entry.getValue().get(LATEST));
+                partitions.add(partitionOffset);
+            }
+        }
+        if (!partitions.isEmpty()) {
+            pythonOffsets.put(PARTITIONS, partitions);
+        }
+        return pythonOffsets;
+    }
+
+    /**
+     * @param json: a JSON list of partitions, each one a JSON object or a basic type (stored as {'partition': value})
+     */
+    public static List<Map<String, Object>> parsePartitions(String json) {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        if (json == null || json.equals("")) {
+            return partitions;
+        }
+        try {
+            for (Object partition: MAPPER.readValue(json, new TypeReference<List<Object>>() {})) {
+                partitions.add(asPartition(partition));
+            }
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid list of source partitions: " + json, e);
+        }
+        return partitions;
+    }
+}
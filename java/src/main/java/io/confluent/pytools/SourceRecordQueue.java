@@ -0,0 +1,148 @@
+package io.confluent.pytools;
+
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.source.SourceRecord;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue between the prefetch thread (calling the python poll method) and the Connect task thread.
+ * It's bounded in records and in (estimated) bytes: put() blocks while the queue is full,
+ * which keeps python from fetching further ahead than the producer can send.
+ * A batch larger than the bounds is still accepted when the queue is empty.
+ */
+public class SourceRecordQueue {
+
+    private final int maxRecords;
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private List<SourceRecord> buffer = new ArrayList<>();
+    private long bufferedBytes = 0;
+    private Throwable failure;
+
+    public SourceRecordQueue(int maxRecords, long maxBytes) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+    }
+
+    public void put(List<SourceRecord> batch) throws InterruptedException {
+        long batchBytes = estimateSize(batch);
+
+        lock.lockInterruptibly();
+        try {
+            while (!buffer.isEmpty() &&
+                    (buffer.size() + batch.size() > maxRecords || bufferedBytes + batchBytes > maxBytes)) {
+                notFull.await();
+            }
+            buffer.addAll(batch);
+            bufferedBytes += batchBytes;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the prefetch thread when it stops on an error: the error is rethrown by drain()
+     * once the records queued before it have been drained.
+     */
+    public void fail(Throwable e) {
+        lock.lock();
+        try {
+            failure = e;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param timeoutMs: how long to wait for records when the queue is empty
+     * @return all the queued records, or null if there were none before the timeout
+     */
+    public List<SourceRecord> drain(long timeoutMs) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (buffer.isEmpty() && failure == null && remaining > 0) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            if (buffer.isEmpty()) {
+                if (failure != null) {
+                    throw new ConnectException("The python prefetch thread failed", failure);
+                }
+                return null;
+            }
+            List<SourceRecord> drained = buffer;
+            buffer = new ArrayList<>();
+            bufferedBytes = 0;
+            notFull.signalAll();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return buffer.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // rough size of the keys and values of the records, in bytes
+    static long estimateSize(List<SourceRecord> records) {
+        long size = 0;
+        for (SourceRecord record: records) {
+            size += estimateSize(record.key()) + estimateSize(record.value());
+        }
+        return size;
+    }
+
+    // rough size of a key or a value, in bytes
+    static long estimateSize(Object data) {
+        if (data == null) {
+            return 0;
+        } else if (data instanceof String) {
+            return ((String) data).length();
+        } else if (data instanceof byte[]) {
+            return ((byte[]) data).length;
+        } else if (data instanceof ByteBuffer) {
+            return ((ByteBuffer) data).remaining();
+        } else if (data instanceof Struct) {
+            long size = 0;
+            for (Field field: ((Struct) data).schema().fields()) {
+                size += estimateSize(((Struct) data).get(field));
+            }
+            return size;
+        } else if (data instanceof Collection) {
+            long size = 0;
+            for (Object item: (Collection<?>) data) {
+                size += estimateSize(item);
+            }
+            return size;
+        } else if (data instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry: ((Map<?, ?>) data).entrySet()) {
+                size += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        return 8;
+    }
+}
@@ -0,0 +1,87 @@
+package io.confluent.pytools;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * An engine running no python at all (python.engine=stub): the statements are ignored and the functions are
+ * java functions registered by name, or the identity (the first argument is returned, null without arguments).
+ * No virtual environment is built. Used to measure the overhead of the java side (conversions, schemas, records),
+ * and in tests.
+ */
+public class StubEngine implements PythonEngine {
+
+    private static final ConcurrentHashMap<String, Function<Object[], Object>> FUNCTIONS = new ConcurrentHashMap<>();
+
+    private final EngineStats stats = new EngineStats();
+
+    /**
+     * @param functionName: the name of the python function replaced, without its module (eg. "transform")
+     */
+    public static void register(String functionName, Function<Object[], Object> function) {
+        FUNCTIONS.put(functionName, function);
+    }
+
+    public static void unregister(String functionName) {
+        FUNCTIONS.remove(functionName);
+    }
+
+    @Override
+    public void executePythonStatement(String pythonStatement) {
+    }
+
+    @Override
+    public Object callPythonMethod(String methodName, Object... args) {
+        return call(methodName.substring(methodName.lastIndexOf('.') + 1), args);
+    }
+
+    @Override
+    public PythonCallable bind(String moduleAlias, String functionName) {
+        return new PythonCallable() {
+            @Override
+            public Object call(Object... args) {
+                return StubEngine.this.call(functionName, args);
+            }
+
+            @Override
+            public String getFunctionName() {
+                return functionName;
+            }
+        };
+    }
+
+    private Object call(String functionName, Object... args) {
+        return stats.record(() -> {
+            Function<Object[], Object> function = FUNCTIONS.get(functionName);
+            if (function != null) {
+                return function.apply(args);
+            }
+            return args.length > 0 ? args[0] : null;
+        });
+    }
+
+    @Override
+    public PythonEngine newInterpreter(boolean subInterpreter) {
+        return new StubEngine();
+    }
+
+    @Override
+    public EngineStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public String getPythonExePath() {
+        return null;
+    }
+
+    @Override
+    public String getVirtualEnvironmentPath() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+}
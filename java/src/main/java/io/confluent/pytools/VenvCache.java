@@ -0,0 +1,360 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.commons.io.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of the virtual environments built in a working directory.
+ *
+ * A venv is named "venv-<hash>", the hash covering the python executable (path and version),
+ * the requirements and the content of the offline installation directory. A venv is reused once it's complete:
+ * a marker file is written after a successful pip install. A venv left incomplete (eg. the worker stopped during
+ * pip install) is completed by the next build, pip skipping the packages already installed.
+ *
+ * The marker's modification time is the last time the venv was used: when the total size of the ready venvs
+ * exceeds a budget, the least recently used ones are deleted.
+ *
+ * Builds of the same venv are serialized by a lock file next to it ("venv-<hash>.lock"), so that the tasks and
+ * transforms starting together (in this JVM or in other workers sharing the working directory) build it once:
+ * the first one builds it, the others wait and reuse it.
+ *
+ * The processes using a venv hold a shared lock on another byte of the same file (taken before the build lock is
+ * released, see acquire()): a venv is only evicted when no process is building or using it.
+ */
+public class VenvCache {
+
+    static final String VENV_PREFIX = "venv-";
+    static final String READY_MARKER = ".venv-ready";
+    static final String LOCK_SUFFIX = ".lock";
+
+    // the bytes of the lock file locked by the builders (exclusive) and by the users (shared) of the venv
+    private static final long BUILD_REGION = 0;
+    private static final long USE_REGION = 1;
+
+    private static class Usage {
+        private final FileLock lock;
+        private int users;
+
+        private Usage(FileLock lock) {
+            this.lock = lock;
+        }
+    }
+
+    // venvs used by this JVM, with their number of users: never evicted
+    private static final HashMap<Path, Usage> activeVenvs = new HashMap<>();
+
+    // file locks are held by the JVM: threads of the same JVM are serialized first
+    private static final ConcurrentHashMap<Path, ReentrantLock> buildLocks = new ConcurrentHashMap<>();
+
+    // one channel per lock file, open while this JVM holds a lock on it: on some systems, closing a channel releases
+    // all the locks of the JVM on the file (including the ones taken through other channels)
+    private static final ConcurrentHashMap<Path, FileChannel> lockChannels = new ConcurrentHashMap<>();
+
+    private VenvCache() {
+    }
+
+    /**
+     * @return the name of the venv ("venv-<hash>") for this python executable, requirements and offline directory
+     */
+    @SneakyThrows
+    public static String venvName(String pythonExecutable, String pythonVersion, String[] requirements,
+                                  String localDependenciesDirectory) {
+        StringBuilder key = new StringBuilder();
+        key.append("python: ").append(pythonExecutable).append(' ').append(pythonVersion).append('\n');
+        for (String requirement: requirements) {
+            String line = requirement.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                key.append("requirement: ").append(line).append('\n');
+            }
+        }
+        if (localDependenciesDirectory != null && !localDependenciesDirectory.trim().isEmpty()) {
+            key.append("offline: ").append(localDependenciesDirectory).append('\n');
+            File[] packages = new File(localDependenciesDirectory).listFiles();
+            if (packages != null) {
+                Arrays.sort(packages);
+                for (File file: packages) {
+                    key.append(file.getName()).append(' ').append(file.length()).append(' ').append(file.lastModified()).append('\n');
+                }
+            }
+        }
+
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder(VENV_PREFIX);
+        for (int i = 0; i < 8; i++) {
+            name.append(String.format("%02x", hash[i]));
+        }
+        return name.toString();
+    }
+
+    /**
+     * Takes the build lock of a venv, waiting for the other builders (threads or processes) to release it.
+     * The venv should be checked with isReady() once the lock is taken.
+     *
+     * @return the lock, to be closed when the venv is built
+     */
+    public static Closeable lockForBuild(Path venvPath) throws IOException {
+        Path venv = venvPath.toAbsolutePath();
+        ReentrantLock jvmLock = buildLocks.computeIfAbsent(venv, path -> new ReentrantLock());
+        if (!jvmLock.tryLock()) {
+            System.out.println("waiting for the virtual environment " + venv + " built by another task");
+            jvmLock.lock();
+        }
+
+        try {
+            FileChannel channel = lockChannel(venv);
+            FileLock fileLock = channel.tryLock(BUILD_REGION, 1, false);
+            if (fileLock == null) {
+                System.out.println("waiting for the virtual environment " + venv + " built by another process");
+                fileLock = channel.lock(BUILD_REGION, 1, false);
+            }
+
+            FileLock lockedFile = fileLock;
+            return () -> {
+                try {
+                    lockedFile.release();
+                } finally {
+                    synchronized (activeVenvs) {
+                        closeLockChannel(venv);
+                    }
+                    jvmLock.unlock();
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Records a user of a ready venv (a python host): the venv isn't evicted, by this JVM or by the other processes
+     * sharing the working directory, until its users have released it. Called under the build lock, so that the
+     * venv can't be evicted in between.
+     */
+    public static void acquire(Path venvPath) throws IOException {
+        Path venv = venvPath.toAbsolutePath();
+        synchronized (activeVenvs) {
+            Usage usage = activeVenvs.get(venv);
+            if (usage == null) {
+                usage = new Usage(lockChannel(venv).lock(USE_REGION, 1, true));
+                activeVenvs.put(venv, usage);
+            }
+            usage.users++;
+        }
+    }
+
+    /**
+     * Releases a venv recorded by acquire(), it can be evicted once it has no users left.
+     */
+    public static void release(Path venvPath) {
+        Path venv = venvPath.toAbsolutePath();
+        synchronized (activeVenvs) {
+            Usage usage = activeVenvs.get(venv);
+            if (usage == null) {
+                return;
+            }
+            usage.users--;
+            if (usage.users == 0) {
+                activeVenvs.remove(venv);
+                try {
+                    usage.lock.release();
+                } catch (IOException e) {
+                    System.out.println("could not release the lock of the virtual environment " + venv + ": " + e);
+                }
+                // unless a thread is building it
+                ReentrantLock jvmLock = buildLocks.computeIfAbsent(venv, path -> new ReentrantLock());
+                if (jvmLock.tryLock()) {
+                    try {
+                        closeLockChannel(venv);
+                    } finally {
+                        jvmLock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    static boolean isActive(Path venvPath) {
+        synchronized (activeVenvs) {
+            return activeVenvs.containsKey(venvPath.toAbsolutePath());
+        }
+    }
+
+    private static FileChannel lockChannel(Path venv) throws IOException {
+        Files.createDirectories(venv.getParent());
+        return lockChannels.computeIfAbsent(venv, VenvCache::openLockChannel);
+    }
+
+    /**
+     * Closes the lock channel of a venv once this JVM holds no lock on it: called under the activeVenvs lock, with the
+     * build lock of this JVM, after the file locks are released. The lock file stays, the other processes may be
+     * waiting on it.
+     */
+    private static void closeLockChannel(Path venv) {
+        if (activeVenvs.containsKey(venv)) {
+            return;
+        }
+        FileChannel channel = lockChannels.remove(venv);
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("could not close the lock file of the virtual environment " + venv + ": " + e);
+            }
+        }
+    }
+
+    static boolean isLockChannelOpen(Path venvPath) {
+        return lockChannels.containsKey(venvPath.toAbsolutePath());
+    }
+
+    @SneakyThrows
+    private static FileChannel openLockChannel(Path venv) {
+        return FileChannel.open(venv.resolveSibling(venv.getFileName() + LOCK_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // null if the region is locked, by another process or by this JVM
+    private static FileLock tryLock(FileChannel channel, long region) throws IOException {
+        try {
+            return channel.tryLock(region, 1, false);
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    public static boolean isReady(Path venvPath) {
+        return Files.exists(venvPath.resolve(READY_MARKER));
+    }
+
+    public static void markReady(Path venvPath, String[] requirements) throws IOException {
+        Files.write(venvPath.resolve(READY_MARKER), Arrays.asList(requirements), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records that a ready venv is being (re)used.
+     */
+    public static void touch(Path venvPath) throws IOException {
+        Files.setLastModifiedTime(venvPath.resolve(READY_MARKER), FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Deletes the least recently used ready venvs of the working directory until their total size is under maxBytes.
+     * The venvs being built or used (by this JVM or by other processes) and the incomplete ones are never deleted.
+     *
+     * @return the deleted venvs
+     */
+    public static List<Path> evict(Path workingDirectory, long maxBytes) throws IOException {
+        List<Path> deleted = new ArrayList<>();
+        if (maxBytes <= 0) {
+            return deleted;
+        }
+
+        List<Path> readyVenvs = new ArrayList<>();
+        try (Stream<Path> children = Files.list(workingDirectory)) {
+            children.filter(path -> path.getFileName().toString().startsWith(VENV_PREFIX) && isReady(path))
+                    .forEach(readyVenvs::add);
+        }
+
+        long totalBytes = 0;
+        for (Path venv: readyVenvs) {
+            totalBytes += sizeOf(venv);
+        }
+        readyVenvs.sort(Comparator.comparing(VenvCache::lastUsed));
+
+        for (Path venv: readyVenvs) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            long venvBytes = evictIfUnused(venv.toAbsolutePath());
+            if (venvBytes >= 0) {
+                totalBytes -= venvBytes;
+                deleted.add(venv);
+                System.out.println("evicted the virtual environment " + venv + " (" + venvBytes + " bytes)");
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes a venv if nobody builds or uses it: its build lock is free and nobody holds its shared use lock.
+     * No lock is waited for, a busy venv is skipped.
+     *
+     * @return the size of the deleted venv, -1 if it's busy
+     */
+    private static long evictIfUnused(Path venv) throws IOException {
+        // the users of this JVM don't wait for the deletion to take the use lock
+        synchronized (activeVenvs) {
+            if (activeVenvs.containsKey(venv)) {
+                return -1;
+            }
+            ReentrantLock jvmLock = buildLocks.computeIfAbsent(venv, path -> new ReentrantLock());
+            if (!jvmLock.tryLock()) {
+                return -1;
+            }
+            try {
+                FileChannel channel = lockChannel(venv);
+                FileLock buildLock = tryLock(channel, BUILD_REGION);
+                if (buildLock == null) {
+                    return -1;
+                }
+                try {
+                    FileLock useLock = tryLock(channel, USE_REGION);
+                    if (useLock == null) {
+                        return -1;
+                    }
+                    try {
+                        // deleted by another process in the meantime
+                        if (!isReady(venv)) {
+                            return -1;
+                        }
+                        long venvBytes = sizeOf(venv);
+                        // the marker goes first: a partially deleted venv is not reused
+                        Files.delete(venv.resolve(READY_MARKER));
+                        FileUtils.deleteDirectory(venv.toFile());
+                        return venvBytes;
+                    } finally {
+                        useLock.release();
+                    }
+                } finally {
+                    buildLock.release();
+                }
+            } finally {
+                closeLockChannel(venv);
+                jvmLock.unlock();
+            }
+        }
+    }
+
+    @SneakyThrows
+    private static FileTime lastUsed(Path venv) {
+        return Files.getLastModifiedTime(venv.resolve(READY_MARKER));
+    }
+
+    private static long sizeOf(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Relocatable snapshot of the packages installed in a virtual environment, for the workers without access to a
+ * package index: the venv is built once (with network access), exported, and the snapshot is unpacked in the new
+ * venvs instead of running pip install.
+ *
+ * A venv itself isn't relocatable (its scripts and configuration hold absolute paths): the snapshot is a zip of its
+ * site-packages, with a manifest of the requirements hash and of the python ABI (implementation, version and platform).
+ * It's only restored in a venv with the same requirements and ABI.
+ *
+ * Export a venv built by a connector or a transform (it must be complete):
+ *   java -cp <plugin jars> io.confluent.pytools.VenvSnapshot <working dir>/venv-<hash> snapshot.zip
+ */
+public class VenvSnapshot {
+
+    static final String MANIFEST = "snapshot.properties";
+    static final String SITE_PACKAGES = "site-packages/";
+
+    static final String REQUIREMENTS_HASH = "requirements.hash";
+    static final String PYTHON_ABI = "python.abi";
+    static final String PYTHON_VERSION = "python.version";
+
+    private VenvSnapshot() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("usage: VenvSnapshot <venv directory> <snapshot file>");
+            System.exit(1);
+        }
+        export(Paths.get(args[0]), Paths.get(args[1]));
+    }
+
+    /**
+     * Packs the site-packages of a complete venv and its manifest in a zip file.
+     * The requirements are the ones recorded when the venv was marked ready.
+     */
+    public static void export(Path venvPath, Path snapshotFile) throws IOException {
+        if (!VenvCache.isReady(venvPath)) {
+            throw new IOException("The virtual environment " + venvPath + " is not complete.");
+        }
+        List<String> requirements = Files.readAllLines(venvPath.resolve(VenvCache.READY_MARKER), StandardCharsets.UTF_8);
+        PythonToolchain toolchain = PythonToolchain.of(venvPath.resolve("bin").resolve("python").toString());
+        Path sitePackages = Paths.get(toolchain.getPurelib());
+
+        Properties manifest = new Properties();
+        manifest.setProperty(REQUIREMENTS_HASH, requirementsHash(requirements.toArray(new String[0])));
+        manifest.setProperty(PYTHON_ABI, toolchain.getAbi());
+        manifest.setProperty(PYTHON_VERSION, toolchain.getVersion());
+
+        long start = System.currentTimeMillis();
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshotFile)));
+             Stream<Path> files = Files.walk(sitePackages)) {
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            manifest.store(zip, "virtual environment snapshot");
+            zip.closeEntry();
+
+            for (Path file: (Iterable<Path>) files::iterator) {
+                // bytecode caches are rebuilt (or precompiled) on the target
+                if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) || file.toString().contains("__pycache__")) {
+                    continue;
+                }
+                zip.putNextEntry(new ZipEntry(SITE_PACKAGES + sitePackages.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+        }
+        System.out.println("exported " + sitePackages + " to " + snapshotFile + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @return the manifest of the snapshot
+     */
+    public static Properties readManifest(Path snapshotFile) throws IOException {
+        try (ZipFile zip = new ZipFile(snapshotFile.toFile())) {
+            ZipEntry entry = zip.getEntry(MANIFEST);
+            if (entry == null) {
+                throw new IOException(snapshotFile + " is not a virtual environment snapshot (no manifest).");
+            }
+            Properties manifest = new Properties();
+            try (InputStream in = zip.getInputStream(entry)) {
+                manifest.load(in);
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * @param toolchain: the python executable the venv is built from
+     * @return null if the snapshot can be restored for these requirements and python executable, the reason otherwise
+     */
+    public static String checkCompatible(Path snapshotFile, String[] requirements, PythonToolchain toolchain) throws IOException {
+        Properties manifest = readManifest(snapshotFile);
+        if (!requirementsHash(requirements).equals(manifest.getProperty(REQUIREMENTS_HASH))) {
+            return "the requirements differ";
+        }
+        if (!toolchain.getAbi().equals(manifest.getProperty(PYTHON_ABI))) {
+            return "built for " + manifest.getProperty(PYTHON_ABI) + ", not " + toolchain.getAbi();
+        }
+        return null;
+    }
+
+    /**
+     * Unpacks the packages of the snapshot in the site-packages directory of a new venv.
+     */
+    public static void restore(Path snapshotFile, Path sitePackages) throws IOException {
+        long start = System.currentTimeMillis();
+        Path target = sitePackages.toAbsolutePath().normalize();
+        Files.createDirectories(target);
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory() || !entry.getName().startsWith(SITE_PACKAGES)) {
+                    continue;
+                }
+                Path file = target.resolve(entry.getName().substring(SITE_PACKAGES.length())).normalize();
+                if (!file.startsWith(target)) {
+                    throw new IOException("Invalid entry in the snapshot " + snapshotFile + ": " + entry.getName());
+                }
+                Files.createDirectories(file.getParent());
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    zip.transferTo(out);
+                }
+            }
+        }
+        System.out.println("restored " + snapshotFile + " in " + target + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @return the SHA-256 of the requirements, ignoring their order, blank lines and comments
+     */
+    @SneakyThrows
+    static String requirementsHash(String[] requirements) {
+        List<String> lines = new ArrayList<>();
+        for (String requirement: requirements) {
+            String line = requirement.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                lines.add(line);
+            }
+        }
+        Collections.sort(lines);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b: hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
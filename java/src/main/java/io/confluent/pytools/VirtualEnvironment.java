@@ -0,0 +1,44 @@
+package io.confluent.pytools;
+
+/**
+ * A built virtual environment (see PythonEnvironment.buildVirtualEnvironment): what an engine needs to run python in it.
+ */
+public class VirtualEnvironment {
+
+    private final String pythonExecutable;
+    private final String[] paths;
+    private final String path;
+    private final String pycacheDirectory;
+
+    public VirtualEnvironment(String pythonExecutable, String[] paths, String path, String pycacheDirectory) {
+        this.pythonExecutable = pythonExecutable;
+        this.paths = paths;
+        this.path = path;
+        this.pycacheDirectory = pycacheDirectory;
+    }
+
+    /**
+     * @return the python executable of the venv
+     */
+    public String getPythonExecutable() {
+        return pythonExecutable;
+    }
+
+    /**
+     * @return the python paths: site-packages of the venv and of the base python, scripts directory
+     */
+    public String[] getPaths() {
+        return paths;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the directory of the bytecode caches (sys.pycache_prefix), or null
+     */
+    public String getPycacheDirectory() {
+        return pycacheDirectory;
+    }
+}
@@ -0,0 +1,131 @@
+package io.confluent.pytools;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.json.JsonConverter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sample records run through the python entry point before the first real record, so that the lazy imports,
+ * model loading and conversions happen during configure()/start() instead of on the first records.
+ *
+ * The samples are a JSON list of records (a single record is accepted), given inline or in a file.
+ * They're parsed the way python values are received (ints as longs, objects as maps). The key and value of a sample
+ * can be given a schema (key_schema, value_schema), to be converted the way a converter would (e.g. objects to Structs).
+ */
+public class WarmupRecords {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(DeserializationFeature.USE_LONG_FOR_INTS);
+
+    public static final String KEY = "key";
+    public static final String VALUE = "value";
+    public static final String TOPIC = "topic";
+    public static final String KEY_SCHEMA = "key_schema";
+    public static final String VALUE_SCHEMA = "value_schema";
+
+    public static final ConfigDef.Validator VALIDATOR = (name, value) -> {
+        try {
+            for (Object sample: load((String) value)) {
+                if (sample instanceof Map) {
+                    Map<?, ?> fields = (Map<?, ?>) sample;
+                    withSchema(fields.get(KEY), fields.get(KEY_SCHEMA));
+                    withSchema(fields.get(VALUE), fields.get(VALUE_SCHEMA));
+                }
+            }
+        } catch (Exception e) {
+            throw new ConfigException(name, value, e.getMessage());
+        }
+    };
+
+    private WarmupRecords() {
+    }
+
+    /**
+     * @param samples: inline JSON (starting with '[' or '{'), the path of a JSON file, or empty
+     * @return the sample records
+     */
+    public static List<Object> load(String samples) {
+        if (samples == null || samples.trim().equals("")) {
+            return Collections.emptyList();
+        }
+        String trimmed = samples.trim();
+        Object parsed;
+        try {
+            if (trimmed.startsWith("[") || trimmed.startsWith("{")) {
+                parsed = MAPPER.readValue(trimmed, new TypeReference<Object>() {});
+            } else {
+                parsed = MAPPER.readValue(new File(trimmed), new TypeReference<Object>() {});
+            }
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid warm-up records: " + e.getMessage(), e);
+        }
+        if (parsed instanceof List) {
+            return new ArrayList<>((List<?>) parsed);
+        }
+        return Collections.singletonList(parsed);
+    }
+
+    /**
+     * @param value: a key or value of a sample, as returned by load()
+     * @param schemaDefinition: its schema definition (Connect JSON or Avro, see SchemaDefinition), as a JSON object or a
+     *                        string, or null
+     * @return the value converted to the schema, or the schemaless value if there's no schema
+     * @throws DataException if the definition is invalid or the value doesn't match it
+     */
+    public static SchemaAndValue withSchema(Object value, Object schemaDefinition) {
+        if (schemaDefinition == null) {
+            return new SchemaAndValue(null, value);
+        }
+        try {
+            String definition = schemaDefinition instanceof String ? (String) schemaDefinition
+                    : MAPPER.writeValueAsString(schemaDefinition);
+            Schema schema = SchemaDefinition.parse(definition);
+
+            // the JsonConverter envelope gives the conversion of a converter with schemas.enable
+            JsonConverter converter = new JsonConverter();
+            converter.configure(Collections.singletonMap("schemas.enable", true), false);
+            ObjectNode envelope = MAPPER.createObjectNode();
+            envelope.set("schema", converter.asJsonSchema(schema));
+            envelope.set("payload", MAPPER.valueToTree(value));
+            return converter.toConnectData("warmup", MAPPER.writeValueAsBytes(envelope));
+        } catch (DataException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DataException("Invalid warm-up record " + value + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs the samples and reports the warm-up time.
+     *
+     * @param what: what is warmed up, for the report
+     * @param warmup: runs the samples
+     */
+    public static void run(String what, List<Object> samples, Consumer<List<Object>> warmup) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            warmup.accept(samples);
+        } catch (RuntimeException e) {
+            throw new ConnectException("The warm-up of the " + what + " failed", e);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("warmed up the " + what + " with " + samples.size() + " record(s) in " + elapsedMs + " ms");
+    }
+}
@@ -0,0 +1,197 @@
+# Python worker process of io.confluent.pytools.ProcessWorkerPool.
+#
+# Requests and responses are frames (int32 length + payload) on the standard input and output of the process,
+# the values are encoded as in PythonWireFormat.java. Anything the scripts print goes to the standard error.
+#   request: int64 id, byte op, op values
+#   response: int64 id, byte status, value
+import io
+import os
+import struct
+import sys
+import traceback
+from collections.abc import Iterator
+
+EXEC, CALL, NEXT, CLOSE_ITER = 1, 2, 3, 4
+OK, ERROR, ITERATOR = 0, 1, 2
+
+INT64_MIN, INT64_MAX = -(1 << 63), (1 << 63) - 1
+
+
+def encode(out, value):
+    if value is None:
+        out.append(b"N")
+    elif value is True:
+        out.append(b"T")
+    elif value is False:
+        out.append(b"F")
+    elif isinstance(value, int):
+        if not INT64_MIN <= value <= INT64_MAX:
+            raise OverflowError("int %d does not fit in a java long" % value)
+        out.append(b"I" + struct.pack(">q", value))
+    elif isinstance(value, float):
+        out.append(b"D" + struct.pack(">d", value))
+    elif isinstance(value, str):
+        data = value.encode("utf-8")
+        out.append(b"S" + struct.pack(">i", len(data)))
+        out.append(data)
+    elif isinstance(value, (bytes, bytearray, memoryview)):
+        data = bytes(value)
+        out.append(b"B" + struct.pack(">i", len(data)))
+        out.append(data)
+    elif isinstance(value, dict):
+        out.append(b"M" + struct.pack(">i", len(value)))
+        for key, item in value.items():
+            encode(out, key)
+            encode(out, item)
+    elif isinstance(value, (list, tuple, set, frozenset)):
+        out.append(b"L" + struct.pack(">i", len(value)))
+        for item in value:
+            encode(out, item)
+    else:
+        raise TypeError("values of type %s can't be returned to java" % type(value).__name__)
+
+
+def decode(data, pos):
+    tag = data[pos:pos + 1]
+    pos += 1
+    if tag == b"N":
+        return None, pos
+    if tag == b"T":
+        return True, pos
+    if tag == b"F":
+        return False, pos
+    if tag == b"I":
+        return struct.unpack_from(">q", data, pos)[0], pos + 8
+    if tag == b"D":
+        return struct.unpack_from(">d", data, pos)[0], pos + 8
+    if tag in (b"S", b"B"):
+        length = struct.unpack_from(">i", data, pos)[0]
+        pos += 4
+        value = bytes(data[pos:pos + length])
+        return (value.decode("utf-8") if tag == b"S" else value), pos + length
+    if tag == b"L":
+        count = struct.unpack_from(">i", data, pos)[0]
+        pos += 4
+        items = []
+        for _ in range(count):
+            item, pos = decode(data, pos)
+            items.append(item)
+        return items, pos
+    if tag == b"M":
+        count = struct.unpack_from(">i", data, pos)[0]
+        pos += 4
+        items = {}
+        for _ in range(count):
+            key, pos = decode(data, pos)
+            items[key], pos = decode(data, pos)
+        return items, pos
+    raise ValueError("unknown value tag %r" % tag)
+
+
+def read_frame(stream):
+    header = stream.read(4)
+    if len(header) < 4:
+        return None
+    length = struct.unpack(">i", header)[0]
+    data = stream.read(length)
+    if len(data) < length:
+        return None
+    return data
+
+
+class Worker:
+    def __init__(self, requests, responses):
+        self.requests = requests
+        self.responses = responses
+        # namespace of the statements, where the called functions are resolved
+        self.namespace = {"__name__": "__pytools_worker__"}
+        self.functions = {}
+        self.iterators = {}
+        self.next_iterator = 0
+
+    def resolve(self, name):
+        function = self.functions.get(name)
+        if function is None:
+            parts = name.split(".")
+            function = self.namespace[parts[0]]
+            for part in parts[1:]:
+                function = getattr(function, part)
+            self.functions[name] = function
+        return function
+
+    def handle(self, op, values):
+        if op == EXEC:
+            exec(values[0], self.namespace)
+            self.functions.clear()
+            return OK, None
+        if op == CALL:
+            result = self.resolve(values[0])(*values[1])
+            if isinstance(result, Iterator):
+                self.next_iterator += 1
+                self.iterators[self.next_iterator] = result
+                return ITERATOR, self.next_iterator
+            return OK, result
+        if op == NEXT:
+            iterator = self.iterators[values[0]]
+            items = []
+            done = False
+            try:
+                while len(items) < values[1]:
+                    items.append(next(iterator))
+            except StopIteration:
+                done = True
+                del self.iterators[values[0]]
+            return OK, [items, done]
+        if op == CLOSE_ITER:
+            iterator = self.iterators.pop(values[0], None)
+            if iterator is not None and hasattr(iterator, "close"):
+                iterator.close()
+            return OK, None
+        raise ValueError("unknown operation %d" % op)
+
+    def respond(self, request_id, status, value):
+        out = []
+        try:
+            encode(out, value)
+        except Exception:
+            status, out = ERROR, []
+            encode(out, traceback.format_exc())
+        payload = struct.pack(">qb", request_id, status) + b"".join(out)
+        self.responses.write(struct.pack(">i", len(payload)) + payload)
+        self.responses.flush()
+
+    def run(self):
+        while True:
+            data = read_frame(self.requests)
+            if data is None:
+                return
+            request_id, op = struct.unpack_from(">qb", data, 0)
+            pos = 9
+            values = []
+            while pos < len(data):
+                value, pos = decode(data, pos)
+                values.append(value)
+            try:
+                status, value = self.handle(op, values)
+            except BaseException as e:
+                if isinstance(e, (KeyboardInterrupt, SystemExit)):
+                    raise
+                status, value = ERROR, traceback.format_exc()
+            self.respond(request_id, status, value)
+
+
+def main():
+    # the protocol gets its own copies of the standard streams: what the scripts print or read can't corrupt it
+    requests = io.open(os.dup(0), "rb", buffering=1 << 16)
+    responses = io.open(os.dup(1), "wb", buffering=1 << 16)
+    os.dup2(2, 1)
+    devnull = os.open(os.devnull, os.O_RDONLY)
+    os.dup2(devnull, 0)
+    os.close(devnull)
+    sys.stdout = sys.stderr
+    sys.stdin = open(os.devnull)
+    Worker(requests, responses).run()
+
+
+if __name__ == "__main__":
+    main()
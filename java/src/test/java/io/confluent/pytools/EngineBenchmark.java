@@ -0,0 +1,72 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time per call of the python engines on the same scripts (bench_transform.py): run manually,
+ * the GraalPy jars must be in the classpath (provided dependencies) and pemja installable in a venv.
+ */
+public class EngineBenchmark {
+    @TempDir
+    File tempDir;
+
+    private static final int WARMUP_CALLS = 20000;
+    private static final int CALLS = 100000;
+
+    @Test
+    @Disabled
+    void compareEngines() {
+        for (String entryPoint: List.of("bench_transform.transform", "bench_transform.transform_dict")) {
+            for (String engine: List.of(PythonHost.ENGINE_STUB, PythonHost.ENGINE_PEMJA, PythonHost.ENGINE_GRAALPY,
+                    PythonHost.ENGINE_PROCESS)) {
+                benchmark(entryPoint, engine);
+            }
+        }
+    }
+
+    @SneakyThrows
+    private void benchmark(String entryPoint, String engine) {
+        PythonHost host;
+        try {
+            host = new PythonHost(PyUtils.defaultPythonExecutablePath().toString(), Paths.get("src", "test", "resources").toFile(),
+                    entryPoint, tempDir.toString(), null, new EnvironmentOptions().engine(engine));
+        } catch (Exception e) {
+            System.out.println("BENCHMARK " + entryPoint + " " + engine + ": not available (" + e + ")");
+            return;
+        }
+        try {
+            PythonCallable transform = host.entryPoint();
+            for (int i = 0; i < WARMUP_CALLS; i++) {
+                transform.call(record(i));
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                transform.call(record(i));
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println("BENCHMARK " + entryPoint + " " + engine + ": " + (elapsed / CALLS) + " ns/call");
+        } finally {
+            host.close();
+        }
+    }
+
+    private static Map<String, Object> record(int i) {
+        Map<String, Object> value = new HashMap<>();
+        value.put("first_name", "  john " + i);
+        value.put("tags", List.of("A", "B", "C"));
+        Map<String, Object> record = new HashMap<>();
+        record.put("key", (long) i);
+        record.put("value", value);
+        record.put("topic", "bench");
+        return record;
+    }
+}
@@ -0,0 +1,135 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCallCoalescer {
+    @TempDir
+    File tempDir;
+
+    @SneakyThrows
+    @Test
+    void concurrentCalls() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        CallCoalescer coalescer = new CallCoalescer(records -> {
+            batchSizes.add(records.size());
+            sleep(20);
+            return records.stream().map(record -> "result " + record).collect(Collectors.toList());
+        }, 8, 0);
+
+        List<CompletableFuture<Object>> calls = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            int record = i;
+            calls.add(CompletableFuture.supplyAsync(() -> coalescer.call(record)));
+        }
+        for (int i = 0; i < 40; i++) {
+            assertEquals("result " + i, calls.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(40, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.size() < 40, "batches: " + batchSizes);
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 8), "batches: " + batchSizes);
+    }
+
+    @Test
+    void singleCaller() {
+        List<Integer> batchSizes = new ArrayList<>();
+        CallCoalescer coalescer = new CallCoalescer(records -> {
+            batchSizes.add(records.size());
+            return records.iterator();
+        }, 100, 0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, coalescer.call(i));
+        }
+        assertEquals(List.of(1, 1, 1, 1, 1), batchSizes);
+    }
+
+    @SneakyThrows
+    @Test
+    void linger() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        CallCoalescer coalescer = new CallCoalescer(records -> {
+            batchSizes.add(records.size());
+            return records;
+        }, 3, 5000);
+
+        // a full batch doesn't wait for the end of the linger time
+        long start = System.currentTimeMillis();
+        CountDownLatch ready = new CountDownLatch(3);
+        List<CompletableFuture<Object>> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int record = i;
+            calls.add(CompletableFuture.supplyAsync(() -> {
+                ready.countDown();
+                return coalescer.call(record);
+            }));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, calls.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertTrue(System.currentTimeMillis() - start < 4000);
+        assertEquals(List.of(3), batchSizes);
+    }
+
+    @Test
+    void errors() {
+        CallCoalescer failing = new CallCoalescer(records -> {
+            throw new IllegalStateException("invalid batch");
+        }, 10, 0);
+        assertEquals("invalid batch", assertThrows(IllegalStateException.class, () -> failing.call("record")).getMessage());
+
+        CallCoalescer missingResults = new CallCoalescer(records -> List.of(), 10, 0);
+        assertThrows(IllegalStateException.class, () -> missingResults.call("record"));
+
+        assertThrows(IllegalArgumentException.class, () -> new CallCoalescer(records -> records, 0, 0));
+    }
+
+    @SneakyThrows
+    @Test
+    void sharedEnvironment() {
+        Path scripts = Files.createDirectories(tempDir.toPath().resolve("scripts"));
+        Files.write(scripts.resolve("coalesce_test.py"), List.of(
+                "def transform(record):",
+                "    return record",
+                "def transform_batch(records):",
+                "    return records"), StandardCharsets.UTF_8);
+        EnvironmentOptions options = new EnvironmentOptions().engine(PythonHost.ENGINE_STUB).sharedEnvironment(true);
+        PythonHost first = new PythonHost("python3", scripts.toFile(), "coalesce_test.transform", tempDir.toString(), null, options);
+        PythonHost second = new PythonHost("python3", scripts.toFile(), "coalesce_test.transform", tempDir.toString(), null, options);
+        try {
+            PythonCallable firstCalls = first.coalescingEntryPoint("coalesce_test.transform_batch", 10, 0);
+            PythonCallable secondCalls = second.coalescingEntryPoint("coalesce_test.transform_batch", 10, 0);
+            assertEquals("a", firstCalls.call("a"));
+            assertEquals("b", secondCalls.call("b"));
+            assertThrows(IllegalArgumentException.class, () -> firstCalls.call("a", "b"));
+            // one engine, whose batch function was called twice
+            assertEquals(2, first.engineStats().getCalls());
+            assertSame(first.engineStats(), second.engineStats());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestGraalPyEngine {
+    @TempDir
+    File tempDir;
+
+    // GraalPy runs the scripts directly, without a venv
+    @SneakyThrows
+    private GraalPyEngine startEngine() {
+        Path scripts = Files.createDirectories(tempDir.toPath().resolve("scripts"));
+        Files.write(scripts.resolve("graalpy_test.py"), List.of(
+                "def transform(record):",
+                "    record['value'] = 'Modified from python --> ' + record['value']",
+                "    record['key'] = 999",
+                "    record['tags'] = tuple(record['tags'])",
+                "    return record",
+                "def to_bytes(text):",
+                "    return text.encode('utf-8')",
+                "def count(n):",
+                "    for i in range(n):",
+                "        yield i",
+                "def fail():",
+                "    raise ValueError('invalid record')"), StandardCharsets.UTF_8);
+        GraalPyEngine engine = new GraalPyEngine(new VirtualEnvironment("python3", new String[]{scripts.toString()},
+                tempDir.toString(), null));
+        engine.executePythonStatement("import graalpy_test as g");
+        return engine;
+    }
+
+    @Test
+    void callFunctions() {
+        try (GraalPyEngine engine = startEngine()) {
+            PythonCallable transform = engine.bind("g", "transform");
+            Object result = transform.call(Map.of("key", 1, "value", "text", "tags", List.of("a", 2.5, true)));
+            assertEquals(Map.of("key", 999L, "value", "Modified from python --> text", "tags", List.of("a", 2.5, true)), result);
+
+            assertArrayEquals("hé".getBytes(StandardCharsets.UTF_8), (byte[]) engine.callPythonMethod("g.to_bytes", "hé"));
+
+            Iterator<?> items = (Iterator<?>) engine.callPythonMethod("g.count", 3);
+            assertEquals(0L, items.next());
+            assertEquals(1L, items.next());
+            assertEquals(2L, items.next());
+            assertFalse(items.hasNext());
+
+            assertThrows(PythonExecutionException.class, () -> engine.callPythonMethod("g.fail"));
+            assertThrows(IllegalArgumentException.class, () -> engine.bind("g", "missing"));
+            assertEquals(1, engine.getStats().getErrors());
+        }
+    }
+
+    @Test
+    void interpreters() {
+        try (GraalPyEngine engine = startEngine()) {
+            engine.executePythonStatement("state = 'first'");
+            try (PythonEngine other = engine.newInterpreter(false)) {
+                other.executePythonStatement("state = 'second'");
+                other.executePythonStatement("import graalpy_test as g");
+                assertEquals(List.of(0L), List.of(((Iterator<?>) other.callPythonMethod("g.count", 1)).next()));
+            }
+            engine.executePythonStatement("assert state == 'first'");
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void nativeExtensions() {
+        Path venv = tempDir.toPath().resolve("venv");
+        Path sitePackages = Files.createDirectories(venv.resolve("lib").resolve("python3.11").resolve("site-packages"));
+        Files.createDirectories(sitePackages.resolve("pemja"));
+        Files.write(sitePackages.resolve("pemja").resolve("pemja_core.cpython-311-x86_64-linux-gnu.so"), new byte[0]);
+        Files.createDirectories(sitePackages.resolve("arrow"));
+        Files.writeString(sitePackages.resolve("arrow").resolve("__init__.py"), "");
+        VirtualEnvironment pureVenv = new VirtualEnvironment(venv.resolve("bin").resolve("python").toString(),
+                new String[]{sitePackages.toString(), "/usr/lib/python3/dist-packages"}, venv.toString(), null);
+        assertNull(GraalPyEngine.nativeExtension(pureVenv));
+
+        Path extension = Files.createDirectories(sitePackages.resolve("numpy").resolve("core"))
+                .resolve("_multiarray_umath.cpython-311-x86_64-linux-gnu.so");
+        Files.write(extension, new byte[0]);
+        assertEquals(extension.toString(), GraalPyEngine.nativeExtension(pureVenv));
+    }
+}
@@ -0,0 +1,153 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestProcessWorkerPool {
+    @TempDir
+    File tempDir;
+
+    // the workers run from the system python, without building a venv
+    @SneakyThrows
+    private ProcessWorkerPool startPool(int processes) {
+        Path scripts = Files.createDirectories(tempDir.toPath().resolve("scripts"));
+        Files.write(scripts.resolve("worker_test.py"), List.of(
+                "import os",
+                "settings = {}",
+                "def init(value):",
+                "    settings['value'] = value",
+                "def get_setting():",
+                "    return settings.get('value')",
+                "def echo(*args):",
+                "    print('printed by the script')",
+                "    return list(args)",
+                "def pid():",
+                "    return os.getpid()",
+                "def count(n):",
+                "    for i in range(n):",
+                "        yield {'i': i}",
+                "def fail():",
+                "    raise ValueError('invalid record')",
+                "def crash():",
+                "    os._exit(3)",
+                "def unsupported():",
+                "    return object()"), StandardCharsets.UTF_8);
+        VirtualEnvironment venv = new VirtualEnvironment(PyUtils.defaultPythonExecutablePath().toString(),
+                new String[]{scripts.toString()}, tempDir.toString(), null);
+        ProcessWorkerPool pool = new ProcessWorkerPool(venv, processes);
+        pool.executePythonStatement("import worker_test as w");
+        return pool;
+    }
+
+    @Test
+    void callFunctions() {
+        try (ProcessWorkerPool pool = startPool(2)) {
+            assertEquals(2, pool.size());
+            PythonCallable echo = pool.bind("w", "echo");
+            assertEquals(List.of("a", 1L, Map.of("k", List.of(true))), echo.call("a", 1, Map.of("k", List.of(true))));
+            assertEquals(List.of(), pool.callPythonMethod("w.echo"));
+
+            // the module state is per process: init is broadcast
+            pool.bind("w", "init").broadcast("settings");
+            for (int i = 0; i < 4; i++) {
+                assertEquals("settings", pool.callPythonMethod("w.get_setting"));
+            }
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void spreadAcrossProcesses() {
+        try (ProcessWorkerPool pool = startPool(3)) {
+            PythonCallable pid = pool.bind("w", "pid");
+            List<CompletableFuture<Object>> calls = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                calls.add(CompletableFuture.supplyAsync(pid::call));
+            }
+            Set<Object> pids = new HashSet<>();
+            for (CompletableFuture<Object> call: calls) {
+                pids.add(call.get());
+            }
+            assertTrue(pids.size() > 1, "calls handled by " + pids);
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void generator() {
+        try (ProcessWorkerPool pool = startPool(1)) {
+            Iterator<?> items = (Iterator<?>) pool.callPythonMethod("w.count", ProcessWorkerPool.ITERATOR_CHUNK_SIZE + 6);
+            int count = 0;
+            while (items.hasNext()) {
+                assertEquals(Map.of("i", (long) count), items.next());
+                count++;
+            }
+            assertEquals(ProcessWorkerPool.ITERATOR_CHUNK_SIZE + 6, count);
+
+            // an iterator closed before its end is released in the worker
+            Iterator<?> partial = (Iterator<?>) pool.callPythonMethod("w.count", 10);
+            assertEquals(Map.of("i", 0L), partial.next());
+            ((AutoCloseable) partial).close();
+            assertFalse(partial.hasNext());
+        }
+    }
+
+    @Test
+    void pythonErrors() {
+        try (ProcessWorkerPool pool = startPool(1)) {
+            PythonExecutionException error = assertThrows(PythonExecutionException.class, () -> pool.callPythonMethod("w.fail"));
+            assertTrue(error.getMessage().contains("invalid record"));
+            assertThrows(PythonExecutionException.class, () -> pool.callPythonMethod("w.unsupported"));
+            assertThrows(PythonExecutionException.class, () -> pool.executePythonStatement("import missing_module"));
+            assertThrows(IllegalArgumentException.class, () -> pool.callPythonMethod("w.echo", new Object()));
+            // the worker is still usable
+            assertEquals(List.of("ok"), pool.callPythonMethod("w.echo", "ok"));
+        }
+    }
+
+    @Test
+    void crashedWorker() {
+        ProcessWorkerPool pool = startPool(2);
+        Exception crash = assertThrows(Exception.class, () -> pool.callPythonMethod("w.crash"));
+        assertTrue(crash.getMessage().contains("exited"), crash.getMessage());
+        // the calls go to the remaining process
+        assertEquals(List.of("ok"), pool.callPythonMethod("w.echo", "ok"));
+        pool.close();
+        assertThrows(IllegalStateException.class, () -> pool.callPythonMethod("w.echo"));
+    }
+
+    @Test
+    void notPooled() {
+        // the workers already are separate interpreters: a pool of hosts would start as many processes again
+        try (ProcessWorkerPool pool = startPool(1)) {
+            assertFalse(pool.supportsNewInterpreter());
+        }
+
+        PyConnectSmt<SourceRecord> smt = new PyConnectSmt<>();
+        ConfigException e = assertThrows(ConfigException.class, () -> smt.configure(Map.of(
+                PyConnectSmt.SCRIPTS_DIR_CONF, tempDir.toString(),
+                PyConnectSmt.ENTRY_POINT_CONF, "worker_test.echo",
+                PyConnectSmt.CONFIGURE_CONF, "",
+                PyConnectSmt.SETTINGS_CONF, "{}",
+                PyConnectSmt.ENGINE_CONF, PythonHost.ENGINE_PROCESS,
+                PyConnectSmt.POOL_SIZE_CONF, "2")));
+        assertTrue(e.getMessage().contains(PyConnectSmt.WORKER_PROCESSES_CONF), e.getMessage());
+    }
+}
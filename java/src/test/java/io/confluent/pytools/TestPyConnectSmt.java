@@ -90,11 +90,33 @@ public class TestPyConnectSmt {
     @SneakyThrows
     @Test
     void withSourceTaskJSON() {
+        Properties transformProperties = getTransformProperties("transform_json");
+        transformProperties.put("transforms.myTransform.struct.transport", "json");
 
         ConnectStandalone connectStandalone = new ConnectStandalone(
                 commonTestUtils.getConnectWorkerProperties(getSRProperties(), JsonSchemaConverter.class.getName()),
                 commonTestUtils.getSourceTaskProperties(
-                        getTransformProperties("transform_json"), testTopic,
+                        transformProperties, testTopic,
+                        VerifiableSourceConnectorJSON.class));
+        connectStandalone.start();
+
+        List<ConsumerRecord> records = commonTestUtils.consumeAtLeastXEvents(StringDeserializer.class,
+                StringDeserializer.class,
+                testTopic, 1);
+
+        Assertions.assertTrue(records.get(0).value().toString().contains("Modified from python"));
+
+        connectStandalone.stop();
+    }
+
+    @SneakyThrows
+    @Test
+    void withSourceTaskDict() {
+
+        ConnectStandalone connectStandalone = new ConnectStandalone(
+                commonTestUtils.getConnectWorkerProperties(getSRProperties(), JsonSchemaConverter.class.getName()),
+                commonTestUtils.getSourceTaskProperties(
+                        getTransformProperties("transform_dict"), testTopic,
                         VerifiableSourceConnectorJSON.class));
         connectStandalone.start();
 
@@ -8,6 +8,7 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -136,4 +137,34 @@ class TestPythonEnvironment {
         TestUtils.deleteDirectory(new File(tmpDir));
     }
 
-}
\ No newline at end of file
+
+    @SneakyThrows
+    @Test
+    void compileBytecode() {
+        Path scripts = Files.createTempDirectory(null);
+        Files.write(scripts.resolve("script1.py"), "def poll(offsets):\n    return None\n".getBytes());
+        String python = PyUtils.defaultPythonExecutablePath().toString();
+
+        // next to the sources
+        Assertions.assertTrue(PythonEnvironment.compileBytecode(python, scripts.toString(), null));
+        File[] pycs = scripts.resolve("__pycache__").toFile().listFiles((dir, name) -> name.startsWith("script1."));
+        assertNotNull(pycs);
+        assertEquals(1, pycs.length);
+
+        // in a separate cache directory
+        Path pycache = Files.createTempDirectory(null);
+        TestUtils.deleteDirectory(scripts.resolve("__pycache__").toFile());
+        Assertions.assertTrue(PythonEnvironment.compileBytecode(python, scripts.toString(), pycache.toString()));
+        Assertions.assertFalse(Files.exists(scripts.resolve("__pycache__")));
+        try (Stream<Path> files = Files.walk(pycache)) {
+            Assertions.assertTrue(files.anyMatch(file -> file.getFileName().toString().startsWith("script1.")));
+        }
+
+        // best effort: a failure doesn't throw
+        Files.write(scripts.resolve("broken.py"), "def poll(offsets)\n".getBytes());
+        Assertions.assertFalse(PythonEnvironment.compileBytecode(python, scripts.toString(), null));
+
+        TestUtils.deleteDirectory(scripts.toFile());
+        TestUtils.deleteDirectory(pycache.toFile());
+    }
+}
@@ -9,8 +9,18 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestPythonHost {
     @SneakyThrows
@@ -115,4 +125,136 @@ public class TestPythonHost {
         TestUtils.deleteDirectory(new File(venvDir));
 
     }
+
+    @SneakyThrows
+    @Test
+    void boundCallables() {
+        String pythonExecutable = PyUtils.defaultPythonExecutablePath().toString();
+        Path scriptsDirectory = Paths.get("src","test", "resources");
+
+        PythonHost host = new PythonHost(pythonExecutable, scriptsDirectory.toFile(), "type_passing.simple", ".");
+
+        // resolved once, called many times
+        PythonCallable simple = host.entryPoint();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Bonjour " + i, simple.call("Bonjour", i));
+        }
+        Assertions.assertSame(host.method("json_str"), host.method("json_str"));
+        assertEquals("Bonjour 123", host.method("json_str").call("{\"a_string\":\"Bonjour\", \"an_integer\":\"123\"}"));
+
+        String venvDir = host.venvPath();
+        host.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> simple.call("Bonjour", 1));
+        TestUtils.deleteDirectory(new File(venvDir));
+    }
+
+    @SneakyThrows
+    @Test
+    void asyncCalls() {
+        Path scriptsDirectory = Paths.get("src","test", "resources");
+        PythonHost host = new PythonHost("python3", scriptsDirectory.toFile(), "type_passing.simple", ".", null,
+                new EnvironmentOptions().engine(PythonHost.ENGINE_STUB).asyncQueueCapacity(1));
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StubEngine.register("simple", args -> {
+            blocked.countDown();
+            await(release);
+            return Thread.currentThread().getName() + " " + args[0];
+        });
+        try {
+            // the calls run on the python thread of the host, the queue holds one call
+            CompletableFuture<Object> first = host.callEntryPointAsync("Bonjour");
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            CompletableFuture<Object> second = host.callPythonMethodAsync("simple", "Hello");
+            CompletableFuture<Object> rejected = host.callEntryPointAsync("Hallo");
+            ExecutionException error = Assertions.assertThrows(ExecutionException.class, rejected::get);
+            Assertions.assertTrue(error.getCause() instanceof RejectedExecutionException);
+
+            release.countDown();
+            assertEquals("python-host-", first.get(10, TimeUnit.SECONDS).toString().substring(0, 12));
+            Assertions.assertTrue(second.get(10, TimeUnit.SECONDS).toString().endsWith(" Hello"));
+        } finally {
+            StubEngine.unregister("simple");
+            host.close();
+        }
+        ExecutionException closed = Assertions.assertThrows(ExecutionException.class, () -> host.callEntryPointAsync("Bonjour").get());
+        Assertions.assertTrue(closed.getCause() instanceof IllegalStateException);
+    }
+
+    @SneakyThrows
+    @Test
+    void asyncAfterClose() {
+        // the call isn't run (nor a python thread started) once the host is closed
+        Path scriptsDirectory = Paths.get("src","test", "resources");
+        PythonHost host = new PythonHost("python3", scriptsDirectory.toFile(), "type_passing.simple", ".", null,
+                new EnvironmentOptions().engine(PythonHost.ENGINE_STUB));
+        host.close();
+        CompletableFuture<Object> call = host.callEntryPointAsync("Bonjour");
+        ExecutionException error = Assertions.assertThrows(ExecutionException.class, () -> call.get(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(error.getCause() instanceof IllegalStateException);
+    }
+
+    @SneakyThrows
+    @Test
+    void asyncExecutor() {
+        Path scriptsDirectory = Paths.get("src","test", "resources");
+        PythonHost host = new PythonHost("python3", scriptsDirectory.toFile(), "type_passing.simple", ".", null,
+                new EnvironmentOptions().engine(PythonHost.ENGINE_STUB));
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "application-thread"));
+        StubEngine.register("json_str", args -> Thread.currentThread().getName());
+        try {
+            host.setAsyncExecutor(executor);
+            assertEquals("application-thread", host.callPythonMethodAsync("json_str", "{}").get(10, TimeUnit.SECONDS));
+        } finally {
+            StubEngine.unregister("json_str");
+            host.close();
+            executor.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void positionalParameters() {
+        assertEquals(1, PythonHost.positionalParameters(List.of("def poll(offsets):", "    pass"), "poll"));
+        assertEquals(2, PythonHost.positionalParameters(List.of("def poll_other(x):", "def poll(offsets, capacity=None):"), "poll"));
+        assertEquals(2, PythonHost.positionalParameters(List.of(
+                "def poll(offsets: Dict[str, int],",
+                "         capacity={'max_records': 1, 'sep': ')'},  # the capacity, (optional)",
+                "         *, verbose=False, **kwargs) -> list:"), "poll"));
+        assertEquals(Integer.MAX_VALUE, PythonHost.positionalParameters(List.of("def poll(*args):"), "poll"));
+        assertEquals(0, PythonHost.positionalParameters(List.of("async def poll():"), "poll"));
+        assertEquals(-1, PythonHost.positionalParameters(List.of("def polling(offsets):"), "poll"));
+    }
+
+    @SneakyThrows
+    @Test
+    void sharedEnvironmentInit() {
+        Path scriptsDirectory = Paths.get("src","test", "resources");
+        EnvironmentOptions options = new EnvironmentOptions().engine(PythonHost.ENGINE_STUB).sharedEnvironment(true)
+                .init("init", "{\"conf1\": \"value1\"}");
+        PythonHost first = new PythonHost("python3", scriptsDirectory.toFile(), "type_passing.simple", ".", null, options);
+        PythonHost same = new PythonHost("python3", scriptsDirectory.toFile(), "type_passing.simple", ".", null,
+                new EnvironmentOptions().engine(PythonHost.ENGINE_STUB).sharedEnvironment(true)
+                        .init("init", "{\"conf1\": \"value1\"}"));
+        // another init would overwrite the module globals of the first one
+        PythonHost otherSettings = new PythonHost("python3", scriptsDirectory.toFile(), "type_passing.simple", ".", null,
+                new EnvironmentOptions().engine(PythonHost.ENGINE_STUB).sharedEnvironment(true)
+                        .init("init", "{\"conf1\": \"value2\"}"));
+        try {
+            assertSame(first.engineStats(), same.engineStats());
+            Assertions.assertNotSame(first.engineStats(), otherSettings.engineStats());
+        } finally {
+            first.close();
+            same.close();
+            otherSettings.close();
+        }
+    }
 }
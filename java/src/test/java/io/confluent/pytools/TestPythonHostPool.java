@@ -0,0 +1,54 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestPythonHostPool {
+    @Test
+    void execTypes() {
+        assertFalse(PythonHostPool.useSubInterpreters("multi_thread", "3.12"));
+        assertTrue(PythonHostPool.useSubInterpreters("sub_interpreter", "3.9"));
+
+        assertFalse(PythonHostPool.useSubInterpreters("auto", "3.9"));
+        assertFalse(PythonHostPool.useSubInterpreters("auto", "3.11"));
+        assertTrue(PythonHostPool.useSubInterpreters("auto", "3.12"));
+        assertTrue(PythonHostPool.useSubInterpreters("AUTO", "3.13\n"));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            PythonHostPool.useSubInterpreters("threads", "3.12");
+        });
+    }
+
+    @SneakyThrows
+    @Test
+    void pool() {
+        String pythonExecutable = PyUtils.defaultPythonExecutablePath().toString();
+        Path scriptsDirectory = Paths.get("src","test", "resources");
+
+        PythonHost host = new PythonHost(pythonExecutable, scriptsDirectory.toFile(), "test.hello", ".");
+        PythonHostPool pool = PythonHostPool.build(host, 3, false);
+        assertEquals(3, pool.size());
+
+        Set<PythonHost> hosts = new HashSet<>();
+        pool.forEach(hosts::add);
+        assertEquals(3, hosts.size());
+
+        // every interpreter of the pool runs the same scripts
+        pool.forEach(pooledHost -> assertEquals(pooledHost.callEntryPoint(), "just now"));
+        assertEquals(pool.withHost(PythonHost::callEntryPoint), "just now");
+
+        String venvDir = host.venvPath();
+        TestUtils.deleteDirectory(new File(venvDir));
+    }
+}
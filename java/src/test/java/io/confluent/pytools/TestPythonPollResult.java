@@ -160,6 +160,31 @@ class TestPythonPollResult {
         assertNull(record.key());
     }
 
+    @SneakyThrows
+    @Test
+    void declaredSchema() {
+        config.put(PySourceConnectorConfig.KEY_SCHEMA_CONF, "{\"type\": \"int32\"}");
+        config.put(PySourceConnectorConfig.VALUE_SCHEMA_CONF, "{\"type\": \"record\", \"name\": \"user\", \"fields\": [" +
+                "{\"name\": \"first_name\", \"type\": \"string\"}," +
+                "{\"name\": \"age\", \"type\": \"int\"}," +
+                "{\"name\": \"score\", \"type\": \"float\"}," +
+                "{\"name\": \"tags\", \"type\": {\"type\": \"array\", \"items\": \"string\"}}]}");
+        createPythonTask("init", "src_connector2.poll_declared_schema");
+        generateRecords(2);
+
+        SourceRecord first = records.get(0);
+        SourceRecord second = records.get(1);
+        assertSame(first.valueSchema(), second.valueSchema());
+        assertEquals(1234, first.key());
+
+        Struct value = (Struct)first.value();
+        value.validate();
+        assertEquals(value.get("first_name"), "John");
+        assertEquals(value.get("age"), 25);
+        assertEquals(value.get("score"), 1.5f);
+        assertEquals(value.get("tags"), List.of("a", "b"));
+    }
+
     @SneakyThrows
     @Test
     void invalid() {
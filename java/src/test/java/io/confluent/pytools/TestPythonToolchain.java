@@ -0,0 +1,55 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPythonToolchain {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void parse() {
+        PythonToolchain toolchain = PythonToolchain.parse("/usr/bin/python3",
+                "sitecustomize loaded\n3.11\n/usr/lib/python3.11/site-packages\ncpython-311-linux-x86_64\n");
+        assertEquals("/usr/bin/python3", toolchain.getExecutable());
+        assertEquals("3.11", toolchain.getVersion());
+        assertEquals("/usr/lib/python3.11/site-packages", toolchain.getPurelib());
+        assertEquals("cpython-311-linux-x86_64", toolchain.getAbi());
+        assertArrayEquals(new String[]{"/usr/lib/python3.11/site-packages", "/usr/lib64/python3.11/site-packages"},
+                toolchain.getSitePackagesPaths());
+
+        assertThrows(IllegalStateException.class, () -> PythonToolchain.parse("/usr/bin/python3", "3.11\n/usr/lib/python3.11/site-packages"));
+    }
+
+    @SneakyThrows
+    @Test
+    void probedOnce() {
+        // fake python executable counting its runs
+        Path calls = tempDir.toPath().resolve("calls");
+        Path python = tempDir.toPath().resolve("python3");
+        Files.write(python, List.of("#!/bin/sh",
+                "echo run >> " + calls,
+                "echo 3.12",
+                "echo /opt/venv/lib/python3.12/site-packages",
+                "echo cpython-312-linux-x86_64"), StandardCharsets.UTF_8);
+        assertTrue(python.toFile().setExecutable(true));
+
+        assertEquals("3.12", PyUtils.getPythonVersion(python.toString()));
+        assertEquals("/opt/venv/lib/python3.12/site-packages", PyUtils.getSitePackages(python.toString()));
+        assertSame(PythonToolchain.of(python.toString()), PythonToolchain.of(python.toString()));
+        assertEquals(1, Files.readAllLines(calls).size());
+
+        PythonToolchain.invalidate(python.toString());
+        assertEquals("3.12", PythonToolchain.of(python.toString()).getVersion());
+        assertEquals(2, Files.readAllLines(calls).size());
+    }
+}
@@ -0,0 +1,71 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPythonWireFormat {
+
+    @Test
+    void scalars() {
+        assertNull(roundTrip(null));
+        assertEquals(true, roundTrip(true));
+        assertEquals(false, roundTrip(false));
+        assertEquals(42L, roundTrip(42));
+        assertEquals(-7L, roundTrip((short) -7));
+        assertEquals(Long.MAX_VALUE, roundTrip(Long.MAX_VALUE));
+        assertEquals(1.5, roundTrip(1.5f));
+        assertEquals("héllo", roundTrip("héllo"));
+        assertEquals("x", roundTrip('x'));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) roundTrip(new byte[]{1, 2, 3}));
+        assertArrayEquals(new byte[]{2, 3}, (byte[]) roundTrip(ByteBuffer.wrap(new byte[]{1, 2, 3}, 1, 2)));
+    }
+
+    @Test
+    void containers() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("name", "alice");
+        value.put("tags", Arrays.asList("a", null, 3));
+        value.put("nested", Map.of(1, new Object[]{2.0, false}));
+
+        Map<?, ?> decoded = (Map<?, ?>) roundTrip(value);
+        assertEquals("alice", decoded.get("name"));
+        assertEquals(Arrays.asList("a", null, 3L), decoded.get("tags"));
+        assertEquals(List.of(2.0, false), ((Map<?, ?>) decoded.get("nested")).get(1L));
+    }
+
+    @SneakyThrows
+    @Test
+    void encoding() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PythonWireFormat.write(new DataOutputStream(bytes), List.of("ab", 1));
+        assertArrayEquals(new byte[]{'L', 0, 0, 0, 2, 'S', 0, 0, 0, 2, 'a', 'b', 'I', 0, 0, 0, 0, 0, 0, 0, 1}, bytes.toByteArray());
+    }
+
+    @Test
+    void unsupported() {
+        assertThrows(IllegalArgumentException.class, () -> roundTrip(new Object()));
+        assertThrows(IOException.class, () -> PythonWireFormat.read(
+                new DataInputStream(new ByteArrayInputStream("X".getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    @SneakyThrows
+    private static Object roundTrip(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PythonWireFormat.write(new DataOutputStream(bytes), value);
+        return PythonWireFormat.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
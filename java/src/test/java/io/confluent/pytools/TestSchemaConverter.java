@@ -0,0 +1,189 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSchemaConverter {
+    private static final Schema ADDRESS_SCHEMA = SchemaBuilder.struct().name("Address")
+            .field("street", Schema.STRING_SCHEMA)
+            .field("zip", Schema.INT32_SCHEMA)
+            .build();
+
+    private static final Schema SCHEMA = SchemaBuilder.struct().name("Test")
+            .field("name", Schema.STRING_SCHEMA)
+            .field("age", Schema.INT16_SCHEMA)
+            .field("balance", Schema.FLOAT32_SCHEMA)
+            .field("address", ADDRESS_SCHEMA)
+            .field("tags", SchemaBuilder.array(Schema.STRING_SCHEMA).build())
+            .field("scores", SchemaBuilder.map(Schema.STRING_SCHEMA, Schema.INT64_SCHEMA).build())
+            .build();
+
+    @SneakyThrows
+    @Test
+    void structDict() {
+        Struct struct = new Struct(SCHEMA)
+                .put("name", "Liskov, Barbara")
+                .put("age", (short) 75)
+                .put("balance", 123.5f)
+                .put("address", new Struct(ADDRESS_SCHEMA).put("street", "a=b, c").put("zip", 2139))
+                .put("tags", List.of("x,y", "z"))
+                .put("scores", Map.of("a", 1L));
+
+        SchemaConverter converter = new SchemaConverterCache(false).get(SCHEMA);
+        assertEquals(PyJavaIO.normalizedTypeName(SCHEMA), converter.typeName());
+
+        Map<String, Object> data = (Map<String, Object>) converter.toPython(struct);
+        assertEquals("Liskov, Barbara", data.get("name"));
+        assertEquals("a=b, c", ((Map<String, Object>) data.get("address")).get("street"));
+        assertEquals(List.of("x,y", "z"), data.get("tags"));
+
+        // pemja returns python ints as Longs and floats as Doubles
+        HashMap<String, Object> address = new HashMap<>((Map<String, Object>) data.get("address"));
+        address.put("zip", 2140L);
+        HashMap<String, Object> returned = new HashMap<>(data);
+        returned.put("age", 76L);
+        returned.put("balance", 124.5D);
+        returned.put("address", address);
+        returned.put("tags", new ArrayList<>(List.of("x,y", "z", "w")));
+
+        Struct rebuilt = (Struct) converter.fromPython(returned);
+        rebuilt.validate();
+        assertEquals((short) 76, rebuilt.getInt16("age"));
+        assertEquals(124.5f, rebuilt.getFloat32("balance"));
+        assertEquals(2140, rebuilt.getStruct("address").getInt32("zip"));
+        assertEquals("a=b, c", rebuilt.getStruct("address").getString("street"));
+        assertEquals(List.of("x,y", "z", "w"), rebuilt.getArray("tags"));
+        assertEquals(Map.of("a", 1L), rebuilt.getMap("scores"));
+    }
+
+    @SneakyThrows
+    @Test
+    void structJson() {
+        Schema schema = SchemaBuilder.struct().name("Test")
+                .field("name", Schema.STRING_SCHEMA)
+                .field("age", Schema.INT32_SCHEMA)
+                .build();
+
+        SchemaConverter converter = new SchemaConverterCache(true).get(schema);
+        assertEquals("{\"name\":\"Barbara Liskov\",\"age\":75}",
+                converter.toPython(new Struct(schema).put("name", "Barbara Liskov").put("age", 75)));
+
+        Struct rebuilt = (Struct) converter.fromPython("{\"name\":\"Barbara Liskov\",\"age\":76}");
+        assertEquals(76, rebuilt.getInt32("age"));
+    }
+
+    @SneakyThrows
+    @Test
+    void primitives() {
+        SchemaConverterCache converters = new SchemaConverterCache(false);
+
+        assertEquals("INT32", converters.get(Schema.INT32_SCHEMA).typeName());
+        assertEquals(12, converters.get(Schema.INT32_SCHEMA).fromPython(12L));
+        assertEquals((byte) 3, converters.get(Schema.INT8_SCHEMA).fromPython(3L));
+        assertEquals(1.5f, converters.get(Schema.FLOAT32_SCHEMA).fromPython(1.5D));
+        assertEquals("text", converters.get(Schema.STRING_SCHEMA).toPython("text"));
+        assertNull(converters.get(Schema.OPTIONAL_STRING_SCHEMA).fromPython(null));
+
+        // schemaless payloads are passed as is
+        assertNull(converters.get(null).typeName());
+        assertEquals("text", converters.get(null).toPython("text"));
+    }
+
+    @SneakyThrows
+    @Test
+    void cache() {
+        SchemaConverterCache converters = new SchemaConverterCache(false);
+        SchemaConverter converter = converters.get(SCHEMA);
+
+        // equal schemas share the same converter
+        Schema sameSchema = SchemaBuilder.struct().name("Test")
+                .field("name", Schema.STRING_SCHEMA)
+                .field("age", Schema.INT16_SCHEMA)
+                .field("balance", Schema.FLOAT32_SCHEMA)
+                .field("address", ADDRESS_SCHEMA)
+                .field("tags", SchemaBuilder.array(Schema.STRING_SCHEMA).build())
+                .field("scores", SchemaBuilder.map(Schema.STRING_SCHEMA, Schema.INT64_SCHEMA).build())
+                .build();
+        assertSame(converter, converters.get(SCHEMA));
+        assertSame(converter, converters.get(sameSchema));
+        assertEquals(1, converters.size());
+
+        converters.get(ADDRESS_SCHEMA);
+        assertEquals(2, converters.size());
+
+        // keyed records: the key and value schemas alternate, each keeps its last converter
+        for (int i = 0; i < 2; i++) {
+            assertSame(SchemaConverter.SCHEMALESS, converters.keyConverter(null));
+            assertSame(converter, converters.valueConverter(SCHEMA));
+            assertSame(converters.get(Schema.STRING_SCHEMA), converters.keyConverter(Schema.STRING_SCHEMA));
+            assertSame(converters.get(ADDRESS_SCHEMA), converters.valueConverter(ADDRESS_SCHEMA));
+        }
+    }
+
+    @Test
+    void logicalTypes() {
+        Schema schema = SchemaBuilder.struct().name("Payment")
+                .field("amount", Decimal.schema(2))
+                .field("day", org.apache.kafka.connect.data.Date.SCHEMA)
+                .field("time", Time.SCHEMA)
+                .field("at", Timestamp.SCHEMA)
+                .field("history", SchemaBuilder.array(Timestamp.SCHEMA).build())
+                .build();
+        java.util.Date day = new java.util.Date(19_000L * 24 * 3600 * 1000);
+        Struct struct = new Struct(schema)
+                .put("amount", new BigDecimal("12.30"))
+                .put("day", day)
+                .put("time", new java.util.Date(3_600_000L))
+                .put("at", new java.util.Date(1_700_000_000_000L))
+                .put("history", List.of(new java.util.Date(1_600_000_000_000L)));
+
+        SchemaConverter converter = new SchemaConverterCache(false).get(schema);
+        Map<String, Object> data = (Map<String, Object>) converter.toPython(struct);
+        assertEquals("12.30", data.get("amount"));
+        assertEquals(19_000, data.get("day"));
+        assertEquals(3_600_000, data.get("time"));
+        assertEquals(1_700_000_000_000L, data.get("at"));
+        assertEquals(List.of(1_600_000_000_000L), data.get("history"));
+
+        // as returned by python: ints as Longs, the decimal as a str (or a float)
+        HashMap<String, Object> returned = new HashMap<>(data);
+        returned.put("amount", "12.3");
+        returned.put("day", 19_000L);
+        returned.put("time", 3_600_000L);
+        Struct rebuilt = (Struct) converter.fromPython(returned);
+        rebuilt.validate();
+        assertEquals(struct, rebuilt);
+
+        returned.put("amount", 12.345D);
+        assertEquals(new BigDecimal("12.34"), ((Struct) converter.fromPython(returned)).get("amount"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        SchemaConverterCache converters = new SchemaConverterCache(false);
+        SchemaConverter hot = converters.get(SCHEMA);
+        SchemaConverter cold = converters.get(ADDRESS_SCHEMA);
+
+        // a source generating a new schema per record only evicts the schemas it doesn't use anymore
+        for (int i = 0; i < SchemaConverterCache.MAX_CACHED_SCHEMAS; i++) {
+            converters.get(SchemaBuilder.struct().name("Generated" + i).field("id", Schema.INT64_SCHEMA).build());
+            assertSame(hot, converters.get(SCHEMA));
+        }
+        assertEquals(SchemaConverterCache.MAX_CACHED_SCHEMAS, converters.size());
+        assertNotSame(cold, converters.get(ADDRESS_SCHEMA));
+    }
+}
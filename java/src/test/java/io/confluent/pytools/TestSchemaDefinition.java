@@ -0,0 +1,80 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.DataException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSchemaDefinition {
+
+    private static final Schema EXPECTED = SchemaBuilder.struct().name("user")
+            .field("first_name", Schema.STRING_SCHEMA)
+            .field("age", Schema.INT32_SCHEMA)
+            .field("score", Schema.OPTIONAL_FLOAT64_SCHEMA)
+            .field("tags", SchemaBuilder.array(Schema.STRING_SCHEMA).build())
+            .build();
+
+    @SneakyThrows
+    @Test
+    void connectJson() {
+        Schema schema = SchemaDefinition.parse("{\"type\": \"struct\", \"name\": \"user\", \"optional\": false, \"fields\": [" +
+                "{\"field\": \"first_name\", \"type\": \"string\"}," +
+                "{\"field\": \"age\", \"type\": \"int32\"}," +
+                "{\"field\": \"score\", \"type\": \"double\", \"optional\": true}," +
+                "{\"field\": \"tags\", \"type\": \"array\", \"items\": {\"type\": \"string\"}}]}");
+        assertEquals(EXPECTED, schema);
+
+        assertEquals(Schema.INT64_SCHEMA, SchemaDefinition.parse("{\"type\": \"int64\"}"));
+    }
+
+    @SneakyThrows
+    @Test
+    void avro() {
+        Schema schema = SchemaDefinition.parse("{\"type\": \"record\", \"name\": \"user\", \"fields\": [" +
+                "{\"name\": \"first_name\", \"type\": \"string\"}," +
+                "{\"name\": \"age\", \"type\": \"int\"}," +
+                "{\"name\": \"score\", \"type\": [\"null\", \"double\"], \"default\": null}," +
+                "{\"name\": \"tags\", \"type\": {\"type\": \"array\", \"items\": \"string\"}}]}");
+        assertEquals(EXPECTED, schema);
+
+        assertEquals(Schema.INT64_SCHEMA, SchemaDefinition.parse("\"long\""));
+        assertEquals(Schema.OPTIONAL_STRING_SCHEMA, SchemaDefinition.parse("[\"string\", \"null\"]"));
+    }
+
+    @SneakyThrows
+    @Test
+    void invalid() {
+        assertThrows(DataException.class, () -> SchemaDefinition.parse("not json"));
+        assertThrows(DataException.class, () -> SchemaDefinition.parse("{\"type\": \"unknown\"}"));
+        assertThrows(DataException.class, () -> SchemaDefinition.parse("[\"string\", \"long\"]"));
+    }
+
+    @SneakyThrows
+    @Test
+    void declaredPollResult() {
+        SchemaConverter declaredValue = SchemaConverter.build(EXPECTED, false);
+
+        // pemja returns python ints as Longs and floats as Doubles
+        HashMap<String, Object> value = new HashMap<>(Map.of("first_name", "John", "age", 25L, "tags", List.of("a")));
+        HashMap<String, HashMap<String, Object>> rawResult = new HashMap<>();
+        rawResult.put(PythonPollResult.VALUE, value);
+
+        Struct struct = (Struct) new PythonPollResult(rawResult, "test", null, declaredValue)
+                .toSourceRecord(null, null, "topic", null).value();
+        struct.validate();
+        assertSame(EXPECTED, struct.schema());
+        assertEquals(25, struct.getInt32("age"));
+        assertNull(struct.getFloat64("score"));
+
+        value.remove("first_name");
+        assertThrows(DataException.class, () -> new PythonPollResult(rawResult, "test", null, declaredValue));
+    }
+}
@@ -0,0 +1,109 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSchemaInferenceCache {
+
+    @SneakyThrows
+    @Test
+    void sameShapeSameSchema() {
+        SchemaInferenceCache schemas = new SchemaInferenceCache();
+
+        // pemja returns python ints as Longs and floats as Doubles
+        Schema schema = schemas.get("test.key", new HashMap<>(Map.of("name", "a", "count", 1L, "ratio", 0.5D)));
+        assertEquals("test.key", schema.name());
+        assertEquals(1, schema.version());
+        assertEquals(Schema.STRING_SCHEMA, schema.field("name").schema());
+        assertEquals(Schema.INT64_SCHEMA, schema.field("count").schema());
+        assertEquals(Schema.FLOAT64_SCHEMA, schema.field("ratio").schema());
+
+        assertSame(schema, schemas.get("test.key", new HashMap<>(Map.of("name", "b", "count", 2L, "ratio", 1.5D))));
+    }
+
+    @SneakyThrows
+    @Test
+    void newShapeNewVersion() {
+        SchemaInferenceCache schemas = new SchemaInferenceCache();
+
+        Schema first = schemas.get("test.key", new HashMap<>(Map.of("name", "a")));
+        Schema added = schemas.get("test.key", new HashMap<>(Map.of("name", "a", "count", 1L)));
+        Schema retyped = schemas.get("test.key", new HashMap<>(Map.of("name", 1L)));
+        assertEquals(1, first.version());
+        assertEquals(2, added.version());
+        assertEquals(3, retyped.version());
+        assertEquals(Schema.INT64_SCHEMA, retyped.field("name").schema());
+
+        // a known shape keeps its version
+        assertSame(first, schemas.get("test.key", new HashMap<>(Map.of("name", "b"))));
+
+        // versions are counted per struct name
+        assertEquals(1, schemas.get("other.key", new HashMap<>(Map.of("name", "a"))).version());
+    }
+
+    @SneakyThrows
+    @Test
+    void noneValues() {
+        SchemaInferenceCache schemas = new SchemaInferenceCache();
+
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("name", "a");
+        map.put("comment", null);
+        Schema schema = schemas.get("test.value", map);
+        assertTrue(schema.field("comment").schema().isOptional());
+        assertFalse(schema.field("name").schema().isOptional());
+        assertSame(schema, schemas.get("test.value", map));
+    }
+
+    @SneakyThrows
+    @Test
+    void tooManyShapes() {
+        SchemaInferenceCache schemas = new SchemaInferenceCache();
+        for (int i = 0; i < SchemaInferenceCache.MAX_CACHED_SHAPES; i++) {
+            assertEquals(i + 1, schemas.get("test.key", new HashMap<>(Map.of("field" + i, 1L))).version());
+        }
+
+        // the next shapes aren't versioned
+        Schema uncached = schemas.get("test.key", new HashMap<>(Map.of("other", 1L)));
+        assertNull(uncached.version());
+        assertNull(schemas.get("test.key", new HashMap<>(Map.of("another", 1L))).version());
+        assertEquals(1, schemas.get("test.key", new HashMap<>(Map.of("field0", 2L))).version());
+    }
+
+    @SneakyThrows
+    @Test
+    void keysAndValues() {
+        HashMap<String, HashMap<String, Object>> rawResult = new HashMap<>();
+        rawResult.put(PythonPollResult.KEY, new HashMap<>(Map.of("id", 1L)));
+        rawResult.put(PythonPollResult.VALUE, new HashMap<>(Map.of("name", "a")));
+        SourceRecord record = new PythonPollResult(rawResult, "keys_and_values", null, null, true)
+                .toSourceRecord(null, null, "topic", null);
+
+        // the keys and values have their own struct names and versions
+        assertEquals("keys_and_values.key", record.keySchema().name());
+        assertEquals(1, record.keySchema().version());
+        assertEquals("keys_and_values.value", record.valueSchema().name());
+        assertEquals(1, record.valueSchema().version());
+    }
+
+    @SneakyThrows
+    @Test
+    void legacyValueStructName() {
+        HashMap<String, HashMap<String, Object>> rawResult = new HashMap<>();
+        rawResult.put(PythonPollResult.KEY, new HashMap<>(Map.of("id", 1L)));
+        rawResult.put(PythonPollResult.VALUE, new HashMap<>(Map.of("name", "a")));
+        SourceRecord record = new PythonPollResult(rawResult, "legacy_names").toSourceRecord(null, null, "topic", null);
+
+        // by default the values keep the name of the key structs, and share their versions
+        assertEquals("legacy_names.key", record.keySchema().name());
+        assertEquals("legacy_names.key", record.valueSchema().name());
+        assertEquals(2, record.valueSchema().version());
+    }
+}
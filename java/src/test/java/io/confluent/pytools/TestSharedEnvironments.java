@@ -0,0 +1,96 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSharedEnvironments {
+
+    private static class FakeEnvironment implements AutoCloseable {
+        private boolean closed = false;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void referenceCounting() {
+        SharedEnvironments<FakeEnvironment> shared = new SharedEnvironments<>();
+        AtomicInteger builds = new AtomicInteger();
+
+        FakeEnvironment first = shared.acquire("a", () -> { builds.incrementAndGet(); return new FakeEnvironment(); });
+        FakeEnvironment second = shared.acquire("a", () -> { builds.incrementAndGet(); return new FakeEnvironment(); });
+        FakeEnvironment other = shared.acquire("b", () -> { builds.incrementAndGet(); return new FakeEnvironment(); });
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, builds.get());
+        assertEquals(2, shared.users("a"));
+
+        // closed by the last user only
+        shared.release("a");
+        assertFalse(first.closed);
+        shared.release("a");
+        assertTrue(first.closed);
+        assertFalse(other.closed);
+        assertEquals(0, shared.users("a"));
+
+        // rebuilt after it's been closed
+        FakeEnvironment third = shared.acquire("a", FakeEnvironment::new);
+        assertNotSame(first, third);
+    }
+
+    @Test
+    void failedBuild() {
+        SharedEnvironments<FakeEnvironment> shared = new SharedEnvironments<>();
+        assertThrows(IllegalStateException.class, () -> shared.acquire("a", () -> {
+            throw new IllegalStateException("pip install failed");
+        }));
+        assertEquals(0, shared.users("a"));
+        assertNotNull(shared.acquire("a", FakeEnvironment::new));
+    }
+
+    @SneakyThrows
+    @Test
+    void concurrentUsers() {
+        SharedEnvironments<FakeEnvironment> shared = new SharedEnvironments<>();
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> users = new ArrayList<>();
+        List<FakeEnvironment> environments = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread user = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                FakeEnvironment environment = shared.acquire("a", () -> {
+                    builds.incrementAndGet();
+                    return new FakeEnvironment();
+                });
+                synchronized (environments) {
+                    environments.add(environment);
+                }
+            });
+            user.start();
+            users.add(user);
+        }
+        start.countDown();
+        for (Thread user: users) {
+            user.join();
+        }
+
+        assertEquals(1, builds.get());
+        assertEquals(8, shared.users("a"));
+        assertEquals(1, environments.stream().distinct().count());
+    }
+}
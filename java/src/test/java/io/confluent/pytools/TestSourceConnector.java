@@ -67,6 +67,30 @@ class TestSourceConnector {
         }
     }
 
+    @Test
+    void assignWorkUnits() {
+        List<Object> units = List.of("a", "b", "c", "d", "e");
+        assertEquals(List.of(List.of("a", "c", "e"), List.of("b", "d")), PySourceConnector.assignWorkUnits(units, 2));
+        assertEquals(List.of(List.of("a"), List.of("b"), List.of("c"), List.of("d"), List.of("e")),
+                PySourceConnector.assignWorkUnits(units, 10));
+        assertEquals(List.of(), PySourceConnector.assignWorkUnits(List.of(), 4));
+    }
+
+    @Test
+    void shouldAssignWorkUnits() {
+        config.put(PySourceConnectorConfig.WORKING_DIR_CONF, tempDir.toString());
+        config.put(PySourceConnectorConfig.PARTITIONS_METHOD_CONF, "src_connector1.partitions");
+        connector.start(config);
+
+        List<Map<String, String>> taskConfigs = connector.taskConfigs(2);
+        assertEquals(2, taskConfigs.size());
+        assertEquals("[\"a\",{\"shard\":3}]", taskConfigs.get(0).get(PySourceConnectorTask.TASK_ASSIGNMENT));
+        assertEquals("[\"b\"]", taskConfigs.get(1).get(PySourceConnectorTask.TASK_ASSIGNMENT));
+        assertEquals(List.of("b"), PySourceConnector.workUnitsFromJson(taskConfigs.get(1).get(PySourceConnectorTask.TASK_ASSIGNMENT)));
+
+        assertEquals(3, connector.taskConfigs(10).size());
+    }
+
     protected void assertTaskConfigs(int maxTasks) {
         List<Map<String, String>> taskConfigs = connector.taskConfigs(maxTasks);
         assertEquals(maxTasks, taskConfigs.size());
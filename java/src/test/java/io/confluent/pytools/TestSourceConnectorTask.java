@@ -1,10 +1,13 @@
 package io.confluent.pytools;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -12,6 +15,7 @@ import lombok.SneakyThrows;
 import org.apache.kafka.connect.data.ConnectSchema;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.source.SourceRecord;
 import org.apache.kafka.connect.source.SourceTaskContext;
@@ -21,6 +25,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -84,6 +91,284 @@ class TestSourceConnectorTask {
         assertTrue(offsets.get("latest") instanceof java.lang.String);
     }
 
+    @SneakyThrows
+    @Test
+    void batchTransform() {
+        config.put(PySourceConnectorConfig.TRANSFORM_ENTRY_POINT_CONF, "src_connector1.transform_batch");
+        createPythonTask("init", "src_connector1.test_offsets");
+        generateRecords(2);
+
+        // the transform drops one record out of each batch of 2
+        assertEquals(2, records.size());
+
+        for (SourceRecord record: records) {
+            assertEquals(record.key(), 1234L);
+            assertEquals(record.value(), "Modified from python --> some string");
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void warmup() {
+        config.put(PySourceConnectorConfig.TRANSFORM_ENTRY_POINT_CONF, "src_connector1.transform_batch");
+        config.put(PySourceConnectorConfig.WARMUP_RECORDS_CONF, "[{\"key\": 1, \"value\": \"sample\", \"offset\": 99}]");
+        createPythonTask("init", "src_connector1.test_offsets");
+        generateRecords(2);
+
+        // the samples don't move the offsets
+        assertEquals(records.get(0).sourceOffset().get("latest"), 1L);
+        assertEquals(records.get(0).value(), "Modified from python --> some string");
+    }
+
+    @SneakyThrows
+    @Test
+    void prefetch() {
+        config.put(PySourceConnectorConfig.PREFETCH_ENABLED_CONF, "true");
+        config.put(PySourceConnectorConfig.PREFETCH_MAX_RECORDS_CONF, "2");
+        createPythonTask("init", "src_connector1.test_offsets");
+        generateRecords(4);
+
+        assertTrue(records.size() >= 4);
+        assertEquals(records.get(0).key(), 1234L);
+        assertEquals(records.get(1).sourceOffset().get("latest"), 2L);
+        assertEquals(records.get(3).sourceOffset().get("latest"), 4L);
+    }
+
+    @SneakyThrows
+    @Test
+    void asyncStartup() {
+        config.put(PySourceConnectorConfig.ASYNC_STARTUP_CONF, "true");
+        createPythonTask("init", "src_connector1.test_offsets");
+
+        // nothing until the environment is built
+        List<SourceRecord> batch = null;
+        for (int i = 0; i < 600 && batch == null; i++) {
+            batch = task.poll();
+        }
+        assertNotNull(batch);
+        assertTrue(task.isPythonReady());
+        assertEquals(batch.get(0).key(), 1234L);
+    }
+
+    @Test
+    void asyncStartupFailure() {
+        config.put(PySourceConnectorConfig.ASYNC_STARTUP_CONF, "true");
+        createPythonTask("init", "missing_script.poll");
+
+        assertThrows(ConnectException.class, () -> {
+            for (int i = 0; i < 600; i++) {
+                task.poll();
+            }
+        });
+        assertFalse(task.isPythonReady());
+    }
+
+    @SneakyThrows
+    @Test
+    void batching() {
+        config.put(PySourceConnectorConfig.BATCH_MAX_RECORDS_CONF, "5");
+        config.put(PySourceConnectorConfig.BATCH_LINGER_MS_CONF, "60000");
+        createPythonTask("init", "src_connector1.poll_with_capacity");
+
+        // 3 records + 2 records (the remaining capacity) in a single poll()
+        List<SourceRecord> batch = task.poll();
+        assertEquals(5, batch.size());
+        assertEquals(batch.get(0).key(), 5L);
+        assertEquals(batch.get(3).key(), 2L);
+        assertEquals(task.getOffsets().get("latest"), 5L);
+    }
+
+    @SneakyThrows
+    @Test
+    void statusMBean() {
+        config.put(PySourceConnectorConfig.ENGINE_CONF, PythonHost.ENGINE_STUB);
+        config.put("name", "status-test");
+        createPythonTask("init", "src_connector1.test_offsets");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("io.confluent.pytools:type=python-source-task,connector=\"status-test\",task=" + TASK_ID);
+        assertEquals(PythonTaskStatus.READY, server.getAttribute(name, "Status"));
+        assertEquals(true, server.getAttribute(name, "Ready"));
+        assertTrue((Long) server.getAttribute(name, "StartupTimeMs") >= 0);
+
+        task.stop();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @SneakyThrows
+    @Test
+    void slowStop() {
+        // the prefetch thread is still in a python call when stop() gives up waiting for it
+        config.put(PySourceConnectorConfig.ENGINE_CONF, PythonHost.ENGINE_STUB);
+        config.put(PySourceConnectorConfig.PREFETCH_ENABLED_CONF, "true");
+        config.put("name", "slow-stop-test");
+        CountDownLatch polling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StubEngine.register("poll_generator", args -> {
+            polling.countDown();
+            // like a python call, ignores the interruption of the prefetch thread
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // keep waiting
+                }
+            }
+            return null;
+        });
+        try {
+            createPythonTask("init", "src_connector1.poll_generator");
+            assertTrue(polling.await(10, TimeUnit.SECONDS));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("io.confluent.pytools:type=python-source-task,connector=\"slow-stop-test\",task=" + TASK_ID);
+
+            task.stop();
+            assertTrue(server.isRegistered(name));
+
+            // the environment is closed by the prefetch thread once python returns
+            release.countDown();
+            for (int i = 0; i < 100 && server.isRegistered(name); i++) {
+                Thread.sleep(100);
+            }
+            assertFalse(server.isRegistered(name));
+        } finally {
+            release.countDown();
+            StubEngine.unregister("poll_generator");
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void capacityArgument() {
+        // the capacity is only passed to the poll methods declaring a second parameter, whatever the mode
+        config.put(PySourceConnectorConfig.ENGINE_CONF, PythonHost.ENGINE_STUB);
+        config.put(PySourceConnectorConfig.BATCH_MAX_RECORDS_CONF, "5");
+        List<Integer> arities = new ArrayList<>();
+        StubEngine.register("poll_with_capacity", args -> {
+            arities.add(args.length);
+            return new ArrayList<>(List.of(new HashMap<>(Map.of("key", 1L, "value", "a"))));
+        });
+        StubEngine.register("test_offsets", args -> {
+            arities.add(args.length);
+            return new ArrayList<>(List.of(new HashMap<>(Map.of("key", 1L, "value", "a"))));
+        });
+        try {
+            createPythonTask("init", "src_connector1.poll_with_capacity");
+            assertEquals(1, task.poll().size());
+            assertEquals(List.of(2), arities);
+            task.stop();
+
+            arities.clear();
+            config.put(PySourceConnectorConfig.BATCH_LINGER_MS_CONF, "60000");
+            config.put(PySourceConnectorConfig.ENTRY_POINT_CONF, "src_connector1.test_offsets");
+            createPythonTask("init", "src_connector1.test_offsets");
+            assertEquals(5, task.poll().size());
+            assertEquals(List.of(1, 1, 1, 1, 1), arities);
+        } finally {
+            StubEngine.unregister("poll_with_capacity");
+            StubEngine.unregister("test_offsets");
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void lingerStopsWhenEmpty() {
+        config.put(PySourceConnectorConfig.ENGINE_CONF, PythonHost.ENGINE_STUB);
+        config.put(PySourceConnectorConfig.BATCH_LINGER_MS_CONF, "60000");
+        int[] calls = new int[1];
+        StubEngine.register("poll_with_capacity", args -> {
+            calls[0]++;
+            return calls[0] == 1 ? new ArrayList<>(List.of(new HashMap<>(Map.of("key", 1L, "value", "a")))) : null;
+        });
+        try {
+            createPythonTask("init", "src_connector1.poll_with_capacity");
+
+            // python has nothing more: poll() returns what it has instead of calling it until the linger elapses
+            long start = System.currentTimeMillis();
+            assertEquals(1, task.poll().size());
+            assertEquals(2, calls[0]);
+            assertNull(task.poll());
+            assertEquals(3, calls[0]);
+            assertTrue(System.currentTimeMillis() - start < 60000);
+        } finally {
+            StubEngine.unregister("poll_with_capacity");
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void generatorMaxBytes() {
+        // batch.max.bytes applies without batch.linger.ms
+        config.put(PySourceConnectorConfig.ENGINE_CONF, PythonHost.ENGINE_STUB);
+        config.put(PySourceConnectorConfig.BATCH_MAX_BYTES_CONF, "10");
+        StubEngine.register("poll_generator", args -> List.of(
+                new HashMap<>(Map.of("value", "0123456")),
+                new HashMap<>(Map.of("value", "0123456")),
+                new HashMap<>(Map.of("value", "0123456"))).iterator());
+        try {
+            createPythonTask("init", "src_connector1.poll_generator");
+            assertEquals(2, task.poll().size());
+            assertEquals(1, task.poll().size());
+        } finally {
+            StubEngine.unregister("poll_generator");
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void generator() {
+        config.put(PySourceConnectorConfig.BATCH_MAX_RECORDS_CONF, "2");
+        createPythonTask("init", "src_connector1.poll_generator");
+
+        // the 5 items of the generator are pulled 2 at a time
+        List<SourceRecord> chunk = task.poll();
+        assertEquals(2, chunk.size());
+        assertEquals(chunk.get(0).key(), 0L);
+        assertEquals(chunk.get(1).key(), 1L);
+        assertEquals(2, task.poll().size());
+
+        chunk = task.poll();
+        assertEquals(1, chunk.size());
+        assertEquals(chunk.get(0).key(), 4L);
+        assertEquals(task.getOffsets().get("latest"), 5L);
+
+        // then the poll method is called again
+        chunk = task.poll();
+        assertEquals(chunk.get(0).key(), 0L);
+        assertEquals(chunk.get(0).sourceOffset().get("latest"), 7L);
+    }
+
+    @SneakyThrows
+    @Test
+    void partitions() {
+        createPythonTask("init", "src_connector1.poll_partitions");
+        generateRecords(4);
+
+        assertEquals(Map.of("shard", "a"), records.get(0).sourcePartition());
+        assertEquals(Map.of("latest", 10L), records.get(0).sourceOffset());
+        assertEquals(Map.of("partition", "b"), records.get(1).sourcePartition());
+        assertEquals(Map.of("latest", 20L), records.get(1).sourceOffset());
+        // no offset: the latest offset of the partition
+        assertEquals(Map.of("latest", 10L), records.get(2).sourceOffset());
+        assertEquals(Map.of(PySourceConnectorTask.TASK_ID, TASK_ID), records.get(3).sourcePartition());
+        assertEquals(Map.of("latest", 1L), records.get(3).sourceOffset());
+
+        Map<String, Object> offsets = task.getOffsets();
+        assertEquals(1L, offsets.get("latest"));
+        assertEquals(2, ((List<?>) offsets.get("partitions")).size());
+    }
+
+    @SneakyThrows
+    @Test
+    void assignment() {
+        // the assigned work units are passed to init(settings, offsets, assignment)
+        config.put(PySourceConnectorTask.TASK_ASSIGNMENT, "[\"a\", {\"shard\": 3}]");
+        createPythonTask("init_assigned", "src_connector1.test_offsets");
+        generateRecords(2);
+
+        assertEquals(2, records.size());
+    }
+
 /*
     @Test
     void shouldRestoreFromSourceOffsets() throws Exception {
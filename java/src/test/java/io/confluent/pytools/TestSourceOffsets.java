@@ -0,0 +1,74 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.connect.storage.OffsetStorageReader;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSourceOffsets {
+
+    private static final Map<String, Object> DEFAULT_PARTITION = Map.of("task.id", 0);
+
+    @SneakyThrows
+    @Test
+    void perRecord() {
+        SourceOffsets offsets = new SourceOffsets(DEFAULT_PARTITION);
+        assertTrue(offsets.toPython().isEmpty());
+
+        Map<String, Object> shardA = offsets.partitionOf(new HashMap<>(Map.of("shard", "a")));
+        Map<String, Object> shardB = offsets.partitionOf("b");
+        assertEquals(Map.of("partition", "b"), shardB);
+        assertSame(DEFAULT_PARTITION, offsets.partitionOf(null));
+
+        assertEquals(Map.of("latest", 10L), offsets.update(shardA, 10L));
+        assertEquals(Map.of("latest", 20L), offsets.update(shardB, 20L));
+        // records without offset get the latest offset of their partition
+        assertEquals(Map.of("latest", 10L), offsets.update(shardA, null));
+        assertEquals(Map.of("latest", 11L), offsets.update(shardA, 11L));
+        assertEquals(Map.of("latest", 1L), offsets.update(DEFAULT_PARTITION, 1L));
+
+        HashMap<String, Object> pythonOffsets = offsets.toPython();
+        assertEquals(1L, pythonOffsets.get("latest"));
+        assertEquals(List.of(Map.of("partition", Map.of("shard", "a"), "offset", 11L),
+                Map.of("partition", Map.of("partition", "b"), "offset", 20L)), pythonOffsets.get("partitions"));
+    }
+
+    @SneakyThrows
+    @Test
+    void load() {
+        List<Map<String, Object>> partitions = SourceOffsets.parsePartitions("[{\"shard\": 1}, \"b\", {\"shard\": 2}]");
+        assertEquals(List.of(Map.of("shard", 1L), Map.of("partition", "b"), Map.of("shard", 2L)), partitions);
+        assertThrows(IllegalArgumentException.class, () -> SourceOffsets.parsePartitions("{\"shard\": 1}"));
+
+        SourceOffsets offsets = new SourceOffsets(DEFAULT_PARTITION);
+        offsets.load(new OffsetStorageReader() {
+            @Override
+            public <T> Map<String, Object> offset(Map<String, T> partition) {
+                return null;
+            }
+
+            @Override
+            public <T> Map<Map<String, T>, Map<String, Object>> offsets(Collection<Map<String, T>> partitions) {
+                // no stored offset for shard 2
+                Map<Map<String, T>, Map<String, Object>> stored = new HashMap<>();
+                for (Map<String, T> partition: partitions) {
+                    if (!partition.equals(Map.of("shard", 2L))) {
+                        stored.put(partition, Map.of("latest", (long) partition.hashCode()));
+                    }
+                }
+                return stored;
+            }
+        }, partitions);
+
+        assertEquals(Map.of("latest", (long) DEFAULT_PARTITION.hashCode()), offsets.offset(DEFAULT_PARTITION));
+        assertEquals(Map.of("latest", (long) Map.of("shard", 1L).hashCode()), offsets.offset(Map.of("shard", 1L)));
+        assertNull(offsets.offset(Map.of("shard", 2L)));
+        assertEquals(2, ((List<?>) offsets.toPython().get("partitions")).size());
+    }
+}
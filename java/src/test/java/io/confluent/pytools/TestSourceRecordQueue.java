@@ -0,0 +1,80 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSourceRecordQueue {
+
+    private static List<SourceRecord> batch(int size, String value) {
+        List<SourceRecord> records = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            records.add(new SourceRecord(null, null, "topic", Schema.STRING_SCHEMA, value));
+        }
+        return records;
+    }
+
+    @SneakyThrows
+    @Test
+    void drain() {
+        SourceRecordQueue queue = new SourceRecordQueue(10, 1000);
+        assertNull(queue.drain(10));
+
+        queue.put(batch(2, "a"));
+        queue.put(batch(3, "b"));
+        assertEquals(5, queue.drain(10).size());
+        assertEquals(0, queue.size());
+
+        // a batch larger than the bounds goes through when the queue is empty
+        queue.put(batch(20, "c"));
+        assertEquals(20, queue.drain(10).size());
+    }
+
+    @SneakyThrows
+    @Test
+    void bounds() {
+        assertBlocks(new SourceRecordQueue(4, 1000), batch(3, "a"), batch(2, "a"));
+        // 10 chars per record
+        assertBlocks(new SourceRecordQueue(100, 25), batch(2, "0123456789"), batch(1, "0123456789"));
+    }
+
+    private static void assertBlocks(SourceRecordQueue queue, List<SourceRecord> first, List<SourceRecord> second) throws InterruptedException {
+        queue.put(first);
+        CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(second);
+                added.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        producer.start();
+
+        assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(first.size(), queue.drain(10).size());
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        assertEquals(second.size(), queue.drain(10).size());
+        producer.join();
+    }
+
+    @SneakyThrows
+    @Test
+    void failure() {
+        SourceRecordQueue queue = new SourceRecordQueue(10, 1000);
+        queue.put(batch(2, "a"));
+        queue.fail(new IllegalStateException("python error"));
+
+        // the records queued before the error are delivered first
+        assertEquals(2, queue.drain(10).size());
+        assertThrows(ConnectException.class, () -> queue.drain(10));
+    }
+}
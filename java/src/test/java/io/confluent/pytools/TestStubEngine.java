@@ -0,0 +1,81 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStubEngine {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void callFunctions() {
+        StubEngine engine = new StubEngine();
+        engine.executePythonStatement("import anything as a");
+        PythonCallable identity = engine.bind("a", "identity");
+        assertEquals("record", identity.call("record", 1));
+        assertNull(identity.call());
+
+        StubEngine.register("stub_upper", args -> args[0].toString().toUpperCase());
+        try {
+            assertEquals("RECORD", engine.bind("a", "stub_upper").call("record"));
+            assertEquals("RECORD", engine.callPythonMethod("a.stub_upper", "record"));
+        } finally {
+            StubEngine.unregister("stub_upper");
+        }
+
+        StubEngine.register("stub_fail", args -> {
+            throw new IllegalStateException("failed");
+        });
+        try {
+            assertThrows(IllegalStateException.class, () -> engine.callPythonMethod("a.stub_fail"));
+        } finally {
+            StubEngine.unregister("stub_fail");
+        }
+
+        assertEquals(5, engine.getStats().getCalls());
+        assertEquals(1, engine.getStats().getErrors());
+    }
+
+    @SneakyThrows
+    @Test
+    void transformWithoutPython() {
+        Path scripts = Files.createDirectories(tempDir.toPath().resolve("scripts"));
+        Files.write(scripts.resolve("stub_transform.py"), List.of(
+                "def init(settings):",
+                "    pass",
+                "def stub_transform(record):",
+                "    return record"), StandardCharsets.UTF_8);
+
+        PyConnectSmt<SourceRecord> smt = new PyConnectSmt<>();
+        smt.configure(Map.of(
+                PyConnectSmt.SCRIPTS_DIR_CONF, scripts.toString(),
+                PyConnectSmt.WORKING_DIR_CONF, tempDir.toString(),
+                PyConnectSmt.ENTRY_POINT_CONF, "stub_transform.stub_transform",
+                PyConnectSmt.CONFIGURE_CONF, "init",
+                PyConnectSmt.SETTINGS_CONF, "{}",
+                PyConnectSmt.ENGINE_CONF, PythonHost.ENGINE_STUB));
+        try {
+            SourceRecord record = new SourceRecord(null, null, "topic", null,
+                    Schema.STRING_SCHEMA, "key", Schema.STRING_SCHEMA, "value");
+            SourceRecord transformed = smt.apply(record);
+            assertEquals("key", transformed.key());
+            assertEquals("value", transformed.value());
+            // no virtual environment
+            assertArrayEquals(new String[]{"scripts"}, tempDir.list());
+        } finally {
+            smt.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestVenvCache {
+    @TempDir
+    File tempDir;
+
+    @SneakyThrows
+    @Test
+    void venvName() {
+        String[] requirements = new String[]{"arrow==1.3.0", "pemja==0.4.1"};
+        String name = VenvCache.venvName("/usr/bin/python3", "3.11", requirements, null);
+        assertTrue(name.startsWith("venv-"));
+        assertEquals(name, VenvCache.venvName("/usr/bin/python3", "3.11", requirements, ""));
+
+        // blank lines and comments don't change the venv
+        assertEquals(name, VenvCache.venvName("/usr/bin/python3", "3.11",
+                new String[]{"# deps", "arrow==1.3.0", " ", "pemja==0.4.1"}, null));
+
+        assertNotEquals(name, VenvCache.venvName("/usr/bin/python3", "3.12", requirements, null));
+        assertNotEquals(name, VenvCache.venvName("/usr/bin/python3.11", "3.11", requirements, null));
+        assertNotEquals(name, VenvCache.venvName("/usr/bin/python3", "3.11", new String[]{"arrow==1.3.0"}, null));
+
+        // the content of the offline directory is part of the key
+        Path offline = Files.createDirectory(tempDir.toPath().resolve("wheels"));
+        String offlineName = VenvCache.venvName("/usr/bin/python3", "3.11", requirements, offline.toString());
+        Files.write(offline.resolve("arrow-1.3.0-py3-none-any.whl"), new byte[10]);
+        assertNotEquals(offlineName, VenvCache.venvName("/usr/bin/python3", "3.11", requirements, offline.toString()));
+    }
+
+    @SneakyThrows
+    @Test
+    void evict() {
+        Path workingDirectory = tempDir.toPath();
+        Path oldest = createVenv(workingDirectory, "venv-1", 1000);
+        Path recent = createVenv(workingDirectory, "venv-2", 2000);
+        Path incomplete = Files.createDirectory(workingDirectory.resolve("venv-3"));
+        Files.write(incomplete.resolve("data"), new byte[5000]);
+        assertFalse(VenvCache.isReady(incomplete));
+
+        // no budget: nothing is deleted
+        assertTrue(VenvCache.evict(workingDirectory, 0).isEmpty());
+
+        // 1000 + 2000 bytes of ready venvs: the least recently used goes
+        assertEquals(List.of(oldest), VenvCache.evict(workingDirectory, 2500));
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(recent));
+        assertTrue(Files.exists(incomplete));
+
+        // the venvs in use are never evicted
+        VenvCache.acquire(recent);
+        VenvCache.acquire(recent);
+        assertTrue(VenvCache.evict(workingDirectory, 1).isEmpty());
+        VenvCache.release(recent);
+        assertTrue(VenvCache.evict(workingDirectory, 1).isEmpty());
+
+        // until their last user releases them
+        VenvCache.release(recent);
+        assertFalse(VenvCache.isActive(recent));
+        assertEquals(List.of(recent), VenvCache.evict(workingDirectory, 1));
+
+        // the lock files aren't kept open once the venvs are released or evicted
+        assertFalse(VenvCache.isLockChannelOpen(oldest));
+        assertFalse(VenvCache.isLockChannelOpen(recent));
+    }
+
+    @SneakyThrows
+    @Test
+    void evictLockedByAnotherProcess() {
+        Path workingDirectory = tempDir.toPath();
+        Path venv = createVenv(workingDirectory, "venv-1", 1000);
+
+        // another worker sharing the working directory builds the venv (exclusive lock on the first byte),
+        // then uses it (shared lock on the second byte)
+        for (String lock: new String[]{"fcntl.LOCK_EX, 1, 0", "fcntl.LOCK_SH, 1, 1"}) {
+            Process process = new ProcessBuilder("python3", "-c",
+                    "import fcntl, sys, time\n" +
+                    "f = open(sys.argv[1], 'a+')\n" +
+                    "fcntl.lockf(f, " + lock + ")\n" +
+                    "print('locked', flush=True)\n" +
+                    "time.sleep(60)",
+                    workingDirectory.resolve("venv-1" + VenvCache.LOCK_SUFFIX).toString()).start();
+            try {
+                assertEquals("locked", new BufferedReader(new InputStreamReader(process.getInputStream())).readLine());
+                assertTrue(VenvCache.evict(workingDirectory, 1).isEmpty());
+                assertTrue(Files.exists(venv));
+            } finally {
+                process.destroy();
+                process.waitFor();
+            }
+        }
+        assertEquals(List.of(venv), VenvCache.evict(workingDirectory, 1));
+        assertFalse(VenvCache.isLockChannelOpen(venv));
+    }
+
+    @SneakyThrows
+    @Test
+    void buildLock() {
+        Path venv = tempDir.toPath().resolve("venv-1");
+        AtomicInteger builders = new AtomicInteger();
+        AtomicInteger builds = new AtomicInteger();
+        AtomicBoolean overlap = new AtomicBoolean();
+
+        List<Thread> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(new Thread(() -> {
+                try {
+                    Closeable lock = VenvCache.lockForBuild(venv);
+                    try {
+                        if (builders.incrementAndGet() > 1) {
+                            overlap.set(true);
+                        }
+                        if (!VenvCache.isReady(venv)) {
+                            Thread.sleep(100);
+                            Files.createDirectories(venv);
+                            VenvCache.markReady(venv, new String[]{"arrow"});
+                            builds.incrementAndGet();
+                        }
+                        builders.decrementAndGet();
+                    } finally {
+                        lock.close();
+                    }
+                } catch (Exception e) {
+                    overlap.set(true);
+                }
+            }));
+        }
+        tasks.forEach(Thread::start);
+        for (Thread task: tasks) {
+            task.join();
+        }
+
+        assertFalse(overlap.get());
+        assertEquals(1, builds.get());
+        assertTrue(Files.exists(tempDir.toPath().resolve("venv-1.lock")));
+        assertFalse(VenvCache.isLockChannelOpen(venv));
+    }
+
+    private static Path createVenv(Path workingDirectory, String name, int size) throws Exception {
+        Path venv = Files.createDirectory(workingDirectory.resolve(name));
+        Files.write(venv.resolve("data"), new byte[size - 1]);
+        Files.write(venv.resolve(VenvCache.READY_MARKER), new byte[1]);
+        Files.setLastModifiedTime(venv.resolve(VenvCache.READY_MARKER), FileTime.fromMillis(size));
+        return venv;
+    }
+}
@@ -0,0 +1,96 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestVenvSnapshot {
+    @TempDir
+    File tempDir;
+
+    private static final String ABI = "cpython-311-linux-x86_64";
+    private static final String[] REQUIREMENTS = new String[]{"arrow==1.3.0", "pemja==0.4.1"};
+
+    @Test
+    void requirementsHash() {
+        String hash = VenvSnapshot.requirementsHash(REQUIREMENTS);
+        assertEquals(hash, VenvSnapshot.requirementsHash(new String[]{"# deps", "pemja==0.4.1", " ", "arrow==1.3.0"}));
+        assertNotEquals(hash, VenvSnapshot.requirementsHash(new String[]{"arrow==1.3.0"}));
+    }
+
+    @SneakyThrows
+    @Test
+    void exportAndRestore() {
+        Path venv = fakeVenv("venv-1");
+        Path snapshot = tempDir.toPath().resolve("snapshot.zip");
+        VenvSnapshot.export(venv, snapshot);
+
+        assertEquals(ABI, VenvSnapshot.readManifest(snapshot).getProperty(VenvSnapshot.PYTHON_ABI));
+        assertEquals("3.11", VenvSnapshot.readManifest(snapshot).getProperty(VenvSnapshot.PYTHON_VERSION));
+
+        PythonToolchain toolchain = new PythonToolchain("/usr/bin/python3", "3.11", "/usr/lib/python3.11/site-packages", ABI);
+        assertNull(VenvSnapshot.checkCompatible(snapshot, REQUIREMENTS, toolchain));
+        assertNotNull(VenvSnapshot.checkCompatible(snapshot, new String[]{"arrow==1.2.0"}, toolchain));
+        assertNotNull(VenvSnapshot.checkCompatible(snapshot, REQUIREMENTS,
+                new PythonToolchain("/usr/bin/python3.12", "3.12", "/usr/lib/python3.12/site-packages", "cpython-312-linux-x86_64")));
+
+        // the packages are restored, without their bytecode caches
+        Path sitePackages = tempDir.toPath().resolve("restored").resolve("site-packages");
+        VenvSnapshot.restore(snapshot, sitePackages);
+        assertEquals("print('arrow')", Files.readString(sitePackages.resolve("arrow").resolve("__init__.py")));
+        assertTrue(Files.exists(sitePackages.resolve("arrow-1.3.0.dist-info").resolve("METADATA")));
+        assertFalse(Files.exists(sitePackages.resolve("arrow").resolve("__pycache__")));
+    }
+
+    @SneakyThrows
+    @Test
+    void incompleteVenv() {
+        Path venv = fakeVenv("venv-2");
+        Files.delete(venv.resolve(VenvCache.READY_MARKER));
+        assertThrows(IOException.class, () -> VenvSnapshot.export(venv, tempDir.toPath().resolve("snapshot.zip")));
+    }
+
+    @SneakyThrows
+    @Test
+    void invalidEntries() {
+        Path snapshot = tempDir.toPath().resolve("evil.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(snapshot))) {
+            zip.putNextEntry(new ZipEntry(VenvSnapshot.MANIFEST));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry(VenvSnapshot.SITE_PACKAGES + "../../outside.py"));
+            zip.write("import os".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        assertThrows(IOException.class, () -> VenvSnapshot.restore(snapshot, tempDir.toPath().resolve("venv").resolve("site-packages")));
+        assertFalse(Files.exists(tempDir.toPath().resolve("outside.py")));
+    }
+
+    // a complete venv whose python is a script printing the probes of PythonToolchain
+    @SneakyThrows
+    private Path fakeVenv(String name) {
+        Path venv = Files.createDirectories(tempDir.toPath().resolve(name));
+        Path sitePackages = Files.createDirectories(venv.resolve("lib").resolve("python3.11").resolve("site-packages"));
+        Path python = Files.createDirectories(venv.resolve("bin")).resolve("python");
+        Files.write(python, List.of("#!/bin/sh", "echo 3.11", "echo " + sitePackages, "echo " + ABI), StandardCharsets.UTF_8);
+        assertTrue(python.toFile().setExecutable(true));
+
+        Path arrow = Files.createDirectories(sitePackages.resolve("arrow"));
+        Files.writeString(arrow.resolve("__init__.py"), "print('arrow')");
+        Files.write(Files.createDirectories(arrow.resolve("__pycache__")).resolve("__init__.cpython-311.pyc"), new byte[16]);
+        Files.writeString(Files.createDirectories(sitePackages.resolve("arrow-1.3.0.dist-info")).resolve("METADATA"), "Name: arrow");
+
+        VenvCache.markReady(venv, REQUIREMENTS);
+        return venv;
+    }
+}
@@ -0,0 +1,177 @@
+package io.confluent.pytools;
+
+import lombok.SneakyThrows;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestWarmupRecords {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void inline() {
+        List<Object> samples = WarmupRecords.load("[{\"key\": 1, \"value\": {\"name\": \"a\", \"score\": 0.5}}, {\"key\": 2}]");
+        assertEquals(2, samples.size());
+
+        // parsed like python values: ints as longs, objects as maps
+        Map<?, ?> first = (Map<?, ?>) samples.get(0);
+        assertEquals(1L, first.get("key"));
+        assertEquals(0.5, ((Map<?, ?>) first.get("value")).get("score"));
+
+        // a single record
+        assertEquals(1, WarmupRecords.load(" {\"key\": 1} ").size());
+        assertTrue(WarmupRecords.load("").isEmpty());
+    }
+
+    @SneakyThrows
+    @Test
+    void file() {
+        Path samplesFile = tempDir.toPath().resolve("samples.json");
+        Files.write(samplesFile, List.of("[{\"value\": \"some text\"}]"), StandardCharsets.UTF_8);
+        List<Object> samples = WarmupRecords.load(samplesFile.toString());
+        assertEquals("some text", ((Map<?, ?>) samples.get(0)).get("value"));
+
+        assertThrows(IllegalArgumentException.class, () -> WarmupRecords.load(tempDir.toPath().resolve("missing.json").toString()));
+    }
+
+    @Test
+    void validator() {
+        WarmupRecords.VALIDATOR.ensureValid("warmup.records", "[]");
+        assertThrows(ConfigException.class, () -> WarmupRecords.VALIDATOR.ensureValid("warmup.records", "[{\"key\": "));
+    }
+
+    @Test
+    void run() {
+        List<Object> received = new ArrayList<>();
+        WarmupRecords.run("transform", List.of(1L, 2L), received::addAll);
+        assertEquals(List.of(1L, 2L), received);
+
+        assertThrows(ConnectException.class, () -> WarmupRecords.run("transform", List.of(1L), samples -> {
+            throw new IllegalStateException("model not found");
+        }));
+    }
+
+    @Test
+    void withSchema() {
+        Map<?, ?> sample = (Map<?, ?>) WarmupRecords.load("{\"key\": 1, \"key_schema\": {\"type\": \"int32\"}, " +
+                "\"value\": {\"name\": \"a\", \"score\": 0.5}, \"value_schema\": {\"type\": \"record\", \"name\": \"user\", " +
+                "\"fields\": [{\"name\": \"name\", \"type\": \"string\"}, {\"name\": \"score\", \"type\": \"double\"}]}}").get(0);
+
+        // Connect JSON schema
+        SchemaAndValue key = WarmupRecords.withSchema(sample.get("key"), sample.get("key_schema"));
+        assertEquals(Schema.Type.INT32, key.schema().type());
+        assertEquals(1, key.value());
+
+        // Avro schema, the object becomes a Struct
+        SchemaAndValue value = WarmupRecords.withSchema(sample.get("value"), sample.get("value_schema"));
+        assertEquals(Schema.Type.STRUCT, value.schema().type());
+        assertEquals("a", ((Struct) value.value()).getString("name"));
+        assertEquals(0.5, ((Struct) value.value()).getFloat64("score"));
+
+        // a schema given as a string, and no schema
+        assertEquals("b", WarmupRecords.withSchema("b", "{\"type\": \"string\"}").value());
+        assertNull(WarmupRecords.withSchema("b", null).schema());
+
+        assertThrows(DataException.class, () -> WarmupRecords.withSchema("b", sample.get("value_schema")));
+        assertThrows(ConfigException.class, () -> WarmupRecords.VALIDATOR.ensureValid("warmup.records",
+                "[{\"value\": \"b\", \"value_schema\": {\"type\": \"unknown\"}}]"));
+    }
+
+    @SneakyThrows
+    @Test
+    void smtCoalesced() {
+        // the samples go through the batch function when the records are coalesced, like the records of apply()
+        Path scripts = Files.createDirectories(tempDir.toPath().resolve("scripts"));
+        Files.write(scripts.resolve("warmup_transform.py"), List.of(
+                "def warmup_transform(record):",
+                "    return record",
+                "def warmup_batch(records):",
+                "    return records"), StandardCharsets.UTF_8);
+        List<Object> batched = Collections.synchronizedList(new ArrayList<>());
+        StubEngine.register("warmup_transform", args -> {
+            throw new IllegalStateException("the entry point isn't called when coalescing");
+        });
+        StubEngine.register("warmup_batch", args -> {
+            batched.addAll((List<?>) args[0]);
+            return args[0];
+        });
+        PyConnectSmt<SourceRecord> smt = new PyConnectSmt<>();
+        try {
+            smt.configure(Map.of(
+                    PyConnectSmt.SCRIPTS_DIR_CONF, scripts.toString(),
+                    PyConnectSmt.WORKING_DIR_CONF, tempDir.toString(),
+                    PyConnectSmt.ENTRY_POINT_CONF, "warmup_transform.warmup_transform",
+                    PyConnectSmt.CONFIGURE_CONF, "",
+                    PyConnectSmt.SETTINGS_CONF, "{}",
+                    PyConnectSmt.ENGINE_CONF, PythonHost.ENGINE_STUB,
+                    PyConnectSmt.COALESCE_ENTRY_POINT_CONF, "warmup_transform.warmup_batch",
+                    PyConnectSmt.WARMUP_RECORDS_CONF, "[{\"key\": \"k\", \"value\": {\"name\": \"a\"}, " +
+                            "\"value_schema\": {\"type\": \"struct\", \"fields\": [{\"field\": \"name\", \"type\": \"string\"}]}}]"));
+
+            assertEquals(1, batched.size());
+            Map<?, ?> record = (Map<?, ?>) batched.get(0);
+            assertEquals("k", record.get("key"));
+            // converted from a Struct
+            assertEquals("a", ((Map<?, ?>) record.get("value")).get("name"));
+            assertNotEquals("", record.get("value_schema"));
+        } finally {
+            smt.close();
+            StubEngine.unregister("warmup_transform");
+            StubEngine.unregister("warmup_batch");
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void smtSinkRecords() {
+        // the SMT of a sink connector: the samples aren't turned into (source) records
+        Path scripts = Files.createDirectories(tempDir.toPath().resolve("scripts"));
+        Files.write(scripts.resolve("sink_transform.py"), List.of(
+                "def sink_transform(record):",
+                "    return record"), StandardCharsets.UTF_8);
+        List<Object> transformed = Collections.synchronizedList(new ArrayList<>());
+        StubEngine.register("sink_transform", args -> {
+            transformed.add(args[0]);
+            return args[0];
+        });
+        PyConnectSmt<SinkRecord> smt = new PyConnectSmt<>();
+        try {
+            smt.configure(Map.of(
+                    PyConnectSmt.SCRIPTS_DIR_CONF, scripts.toString(),
+                    PyConnectSmt.WORKING_DIR_CONF, tempDir.toString(),
+                    PyConnectSmt.ENTRY_POINT_CONF, "sink_transform.sink_transform",
+                    PyConnectSmt.CONFIGURE_CONF, "",
+                    PyConnectSmt.SETTINGS_CONF, "{}",
+                    PyConnectSmt.ENGINE_CONF, PythonHost.ENGINE_STUB,
+                    PyConnectSmt.WARMUP_RECORDS_CONF, "[{\"topic\": \"t\", \"key\": \"k\", \"value\": \"v\"}]"));
+            assertEquals(1, transformed.size());
+            assertEquals("t", ((Map<?, ?>) transformed.get(0)).get("topic"));
+
+            SinkRecord record = smt.apply(new SinkRecord("t", 0, Schema.STRING_SCHEMA, "k", Schema.STRING_SCHEMA, "v", 42L));
+            assertEquals("v", record.value());
+            assertEquals(42L, record.kafkaOffset());
+        } finally {
+            smt.close();
+            StubEngine.unregister("sink_transform");
+        }
+    }
+}
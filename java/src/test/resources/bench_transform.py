@@ -0,0 +1,11 @@
+def transform(record):
+    record['value'] = f"Modified from python --> {record['value']}"
+    record['key'] = 999
+    return record
+
+def transform_dict(record):
+    value = record['value']
+    value['first_name'] = value['first_name'].strip().title()
+    value['tags'] = [tag.lower() for tag in value.get('tags', [])]
+    record['value'] = value
+    return record
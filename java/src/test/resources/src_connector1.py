@@ -41,3 +41,71 @@ def test_offsets_as_string(offsets):
         'value': "another string",
         'offset': f"{offset}-2"
     }]
+
+
+def transform_batch(records):
+    print(f"batch transform received {len(records)} record(s)")
+
+    results = []
+    for record in records:
+        if record['key'] == 45634:
+            results.append(None)
+        else:
+            record['value'] = f"Modified from python --> {record['value']}"
+            results.append(record)
+    return results
+
+
+def poll_with_capacity(offsets, capacity):
+    offset = offsets.get('latest', 0)
+    count = min(3, capacity['max_records'])
+    return [{
+        'key': capacity['max_records'],
+        'value': "some string",
+        'offset': offset + i + 1
+    } for i in range(count)]
+
+
+def poll_generator(offsets):
+    offset = offsets.get('latest', 0)
+    for i in range(5):
+        yield {
+            'key': i,
+            'value': "some string",
+            'offset': offset + i + 1
+        }
+
+
+def poll_partitions(offsets):
+    print("offsets:")
+    print(offsets)
+
+    return [{
+        'key': 1,
+        'value': "shard a",
+        'source_partition': {'shard': 'a'},
+        'offset': 10
+    },{
+        'key': 2,
+        'value': "shard b",
+        'source_partition': 'b',
+        'offset': 20
+    },{
+        'key': 3,
+        'value': "shard a, no offset",
+        'source_partition': {'shard': 'a'}
+    },{
+        'key': 4,
+        'value': "default partition",
+        'offset': 1
+    }]
+
+
+def partitions(settings):
+    return ['a', 'b', {'shard': 3}]
+
+
+def init_assigned(settings, offsets, assignment):
+    print("source connector init() in python")
+    print("assignment:")
+    print(assignment)
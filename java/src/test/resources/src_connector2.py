@@ -70,3 +70,14 @@ def invalid_1(offsets):
 
 def invalid_2(offsets):
     return "hello"
+
+def poll_declared_schema(offsets):
+    return [{
+        'key': 1234,
+        'value': {
+            'first_name': 'John',
+            'age': 25,
+            'score': 1.5,
+            'tags': ['a', 'b']
+        }
+    }]
@@ -34,6 +34,19 @@ def transform_json(record):
 
     return record
 
+def transform_dict(record):
+    try:
+        print("transform entry point in python")
+        print(f"received: {record}")
+
+        record['value']['first_name'] = f"Modified from python --> {record['value']['first_name']}"
+        record['key'] = 999
+    except Exception as e:
+        print("An exception occured:")
+        print(e)
+
+    return record
+
 def drop_messages(record):
     print("transform entry point in python")
     print(f"received: {record}")